@@ -0,0 +1,209 @@
+package org.spoorn.myloot.benchmark;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.text.LiteralText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.collection.DefaultedList;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.block.entity.MyLootInventory;
+import org.spoorn.myloot.block.entity.common.MyLootContainerBlockEntityCommon;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Shared setup for the benchmarks.  These run outside of the game, so mixins aren't applied.  Anything used here,
+ * including decoding and materializing instances, must work without them.
+ */
+public final class BenchmarkFixtures {
+
+    private static boolean bootstrapped = false;
+
+    public static synchronized void bootstrap() {
+        if (!bootstrapped) {
+            SharedConstants.createGameVersion();
+            Bootstrap.initialize();
+            bootstrapped = true;
+        }
+    }
+
+    public static UUID[] playerIds(int players) {
+        Random random = new Random(players);
+        UUID[] playerIds = new UUID[players];
+        for (int i = 0; i < players; ++i) {
+            playerIds[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        return playerIds;
+    }
+
+    /**
+     * A typical dungeon chest roll, half the slots filled.
+     */
+    public static DefaultedList<ItemStack> defaultLoot() {
+        DefaultedList<ItemStack> defaultList = DefaultedList.ofSize(27, ItemStack.EMPTY);
+        defaultList.set(1, new ItemStack(Items.BREAD, 3));
+        defaultList.set(4, new ItemStack(Items.IRON_INGOT, 5));
+        defaultList.set(7, new ItemStack(Items.GOLDEN_APPLE, 1));
+        defaultList.set(10, new ItemStack(Items.ROTTEN_FLESH, 12));
+        defaultList.set(12, new ItemStack(Items.BONE, 7));
+        defaultList.set(15, new ItemStack(Items.SADDLE, 1));
+        defaultList.set(18, new ItemStack(Items.GUNPOWDER, 4));
+        defaultList.set(20, new ItemStack(Items.STRING, 6));
+        defaultList.set(22, new ItemStack(Items.MUSIC_DISC_13, 1));
+        defaultList.set(25, new ItemStack(Items.NAME_TAG, 1));
+        return defaultList;
+    }
+
+    /**
+     * Block entity NBT in the current format, where each player took some of the loot and left the rest.
+     */
+    public static NbtCompound containerNbt(UUID[] playerIds, DefaultedList<ItemStack> defaultList) {
+        MyLootContainerBlockEntity parent = new StubContainer();
+        NbtList instances = new NbtList();
+        NbtList opened = new NbtList();
+        for (int i = 0; i < playerIds.length; ++i) {
+            instances.add(new MyLootInventory(defaultList, instanceItems(i, defaultList), parent).toNbt(playerIds[i]));
+            opened.add(NbtHelper.fromUuid(playerIds[i]));
+        }
+
+        NbtCompound root = new NbtCompound();
+        root.putInt("version", 3);
+        root.put("instances", instances);
+        root.put("opened", opened);
+        NbtCompound nbt = new NbtCompound();
+        nbt.put("myLoot", root);
+        return nbt;
+    }
+
+    /**
+     * What the i-th player left in the container: every other stack taken, and one item of the rest.
+     */
+    private static DefaultedList<ItemStack> instanceItems(int i, DefaultedList<ItemStack> defaultList) {
+        DefaultedList<ItemStack> items = DefaultedList.ofSize(27, ItemStack.EMPTY);
+        for (int slot = 0; slot < defaultList.size(); ++slot) {
+            if ((slot + i) % 2 == 0 && !defaultList.get(slot).isEmpty()) {
+                ItemStack stack = defaultList.get(slot).copy();
+                stack.setCount(Math.max(1, stack.getCount() - 1));
+                items.set(slot, stack);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Same as {@link #containerNbt}, but in version 2 where instances are written in full.  Reading it gives decoded
+     * instances right away.
+     */
+    public static NbtCompound containerNbtV2(UUID[] playerIds, DefaultedList<ItemStack> defaultList) {
+        NbtCompound nbt = containerNbt(playerIds, defaultList);
+        NbtCompound root = nbt.getCompound("myLoot");
+        root.putInt("version", 2);
+        NbtList instances = new NbtList();
+        for (int i = 0; i < playerIds.length; ++i) {
+            DefaultedList<ItemStack> instanceItems = instanceItems(i, defaultList);
+            NbtList items = new NbtList();
+            for (int slot = 0; slot < instanceItems.size(); ++slot) {
+                if (!instanceItems.get(slot).isEmpty()) {
+                    NbtCompound item = new NbtCompound();
+                    item.putByte("Slot", (byte) slot);
+                    instanceItems.get(slot).writeNbt(item);
+                    items.add(item);
+                }
+            }
+            NbtCompound sub = new NbtCompound();
+            sub.putUuid("id", playerIds[i]);
+            sub.put("Items", items);
+            instances.add(sub);
+        }
+        root.put("instances", instances);
+        return nbt;
+    }
+
+    /**
+     * Parent for instances, standing in for a myLoot block entity without a world.
+     */
+    public static class StubContainer implements MyLootContainerBlockEntity {
+
+        @Override
+        public Text getContainerName() {
+            return new LiteralText("benchmark");
+        }
+
+        @Override
+        public void setLootTable(Identifier id, long seed) {
+        }
+
+        @Override
+        public void onOpen(PlayerEntity player) {
+        }
+
+        @Override
+        public void onClose(PlayerEntity player) {
+        }
+
+        @Override
+        public void markDirty() {
+        }
+
+        @Override
+        public boolean canPlayerUse(PlayerEntity player) {
+            return true;
+        }
+
+        @Override
+        public boolean hasPlayerOpened(PlayerEntity player) {
+            return false;
+        }
+
+        @Override
+        public boolean hasBeenOpened() {
+            return false;
+        }
+
+        @Override
+        public boolean isOpenedOnClient() {
+            return false;
+        }
+
+        @Override
+        public void setOpenedOnClient(boolean opened) {
+        }
+
+        @Override
+        public Inventory getPlayerInstancedInventory(PlayerEntity player) {
+            return null;
+        }
+
+        @Override
+        public MyLootContainerBlockEntityCommon.InstanceSnapshot getInstanceSnapshot() {
+            return new MyLootContainerBlockEntityCommon(null).snapshot();
+        }
+
+        @Override
+        public List<ItemStack> getPlayerDrops(PlayerEntity player) {
+            return List.of();
+        }
+
+        @Override
+        public void releaseExternalInstances() {
+        }
+
+        @Override
+        public void resetInstances(UUID playerId) {
+        }
+
+        @Override
+        public void prepareInstance(UUID playerId, long time) {
+        }
+    }
+}
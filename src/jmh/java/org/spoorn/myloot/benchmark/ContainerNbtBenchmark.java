@@ -0,0 +1,71 @@
+package org.spoorn.myloot.benchmark;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.collection.DefaultedList;
+import org.openjdk.jmh.annotations.*;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.block.entity.common.MyLootContainerBlockEntityCommon;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing the myLoot NBT of a single container, as done on chunk load and chunk save.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContainerNbtBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int players;
+
+    private UUID[] playerIds;
+    private DefaultedList<ItemStack> defaultList;
+    private MyLootContainerBlockEntity parent;
+    private NbtCompound nbt;
+    // Read from the same NBT, so nothing changed since
+    private MyLootContainerBlockEntityCommon unchanged;
+    // Read from version 2 NBT, so every instance is decoded and can be re-encoded
+    private MyLootContainerBlockEntityCommon decoded;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.bootstrap();
+        UUID[] playerIds = BenchmarkFixtures.playerIds(this.players);
+        this.playerIds = playerIds;
+        this.defaultList = BenchmarkFixtures.defaultLoot();
+        this.parent = new BenchmarkFixtures.StubContainer();
+        this.nbt = BenchmarkFixtures.containerNbt(playerIds, this.defaultList);
+
+        this.unchanged = new MyLootContainerBlockEntityCommon(null);
+        this.unchanged.readNbt(this.nbt, this.defaultList, this.parent);
+        this.decoded = new MyLootContainerBlockEntityCommon(null);
+        this.decoded.readNbt(BenchmarkFixtures.containerNbtV2(playerIds, this.defaultList), this.defaultList, this.parent);
+    }
+
+    @Benchmark
+    public MyLootContainerBlockEntityCommon readNbt() {
+        MyLootContainerBlockEntityCommon common = new MyLootContainerBlockEntityCommon(null);
+        common.readNbt(this.nbt, this.defaultList, this.parent);
+        return common;
+    }
+
+    @Benchmark
+    public NbtCompound writeNbtUnchanged() {
+        NbtCompound out = new NbtCompound();
+        this.unchanged.writeNbt(out, this.defaultList, this.parent);
+        return out;
+    }
+
+    @Benchmark
+    public NbtCompound writeNbtAllChanged() {
+        for (UUID playerId : this.playerIds) {
+            this.decoded.getInstance(playerId).invalidateNbt();
+        }
+        NbtCompound out = new NbtCompound();
+        this.decoded.writeNbt(out, this.defaultList, this.parent);
+        return out;
+    }
+}
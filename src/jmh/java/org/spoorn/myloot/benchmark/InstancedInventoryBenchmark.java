@@ -0,0 +1,72 @@
+package org.spoorn.myloot.benchmark;
+
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.collection.DefaultedList;
+import org.openjdk.jmh.annotations.*;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.block.entity.common.MyLootContainerBlockEntityCommon;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-player lookups done when a player opens, breaks or looks at a myLoot container.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InstancedInventoryBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int players;
+
+    private DefaultedList<ItemStack> defaultList;
+    private MyLootContainerBlockEntity parent;
+    private MyLootContainerBlockEntityCommon common;
+    private UUID[] playerIds;
+    private UUID newPlayerId;
+    private int next;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.bootstrap();
+        this.playerIds = BenchmarkFixtures.playerIds(this.players);
+        this.newPlayerId = new UUID(-1, -1);
+        this.defaultList = BenchmarkFixtures.defaultLoot();
+        this.parent = new BenchmarkFixtures.StubContainer();
+        this.common = new MyLootContainerBlockEntityCommon(null);
+        this.common.readNbt(BenchmarkFixtures.containerNbt(this.playerIds, this.defaultList), this.defaultList, this.parent);
+        // Decode instances that would have been read before, so only the first iteration pays for it
+        for (UUID playerId : this.playerIds) {
+            this.common.getOrCreateNewInstancedInventoryIfAbsent(playerId, this.defaultList, this.parent);
+        }
+    }
+
+    private UUID nextPlayer() {
+        UUID playerId = this.playerIds[this.next];
+        this.next = (this.next + 1) % this.playerIds.length;
+        return playerId;
+    }
+
+    @Benchmark
+    public Inventory getExistingInstance() {
+        return this.common.getOrCreateNewInstancedInventoryIfAbsent(nextPlayer(), this.defaultList, this.parent);
+    }
+
+    @Benchmark
+    public Inventory createNewInstance() {
+        this.common.clear();
+        return this.common.getOrCreateNewInstancedInventoryIfAbsent(this.newPlayerId, this.defaultList, this.parent);
+    }
+
+    @Benchmark
+    public boolean hasPlayerOpened() {
+        return this.common.hasPlayerOpened(nextPlayer());
+    }
+
+    @Benchmark
+    public boolean hasPlayerNotOpened() {
+        return this.common.hasPlayerOpened(this.newPlayerId);
+    }
+}
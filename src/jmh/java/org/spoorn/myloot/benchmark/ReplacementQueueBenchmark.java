@@ -0,0 +1,114 @@
+package org.spoorn.myloot.benchmark;
+
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spoorn.myloot.core.LootableContainerReplacer;
+import org.spoorn.myloot.core.ReplacementQueue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling container replacements, and the server tick's drain through {@link LootableContainerReplacer#drain}
+ * with its default budget.  Replacements are spread over the three vanilla worlds so the round-robin is exercised.
+ * Without a world there is nothing to replace, so the drain measures the queues, the budget checks and the metrics.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplacementQueueBenchmark {
+
+    private static final int MAX_REPLACEMENTS_PER_TICK = 64;
+    private static final double MAX_MILLIS_PER_TICK = 5.0;
+    // Long enough that drainAll is never cut short
+    private static final double UNLIMITED_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final List<RegistryKey<World>> WORLDS = List.of(World.OVERWORLD, World.NETHER, World.END);
+
+    @State(Scope.Thread)
+    public static class Replacements {
+
+        @Param({"64", "1024", "16384"})
+        public int depth;
+
+        LootableContainerReplacer.ReplacementInfo[] replacements;
+
+        @Setup
+        public void setup() {
+            BenchmarkFixtures.bootstrap();
+            Identifier lootTableId = new Identifier("minecraft", "chests/simple_dungeon");
+            this.replacements = new LootableContainerReplacer.ReplacementInfo[this.depth];
+            for (int i = 0; i < this.depth; ++i) {
+                BlockPos pos = new BlockPos(i % 16, 30 + i / 256, (i / 16) % 16);
+                this.replacements[i] = new LootableContainerReplacer.ReplacementInfo(WORLDS.get(i % WORLDS.size()), pos, lootTableId, i);
+            }
+        }
+
+        Map<RegistryKey<World>, ReplacementQueue> schedule() {
+            Map<RegistryKey<World>, ReplacementQueue> queues = new HashMap<>();
+            for (int i = 0; i < this.replacements.length; ++i) {
+                queues.computeIfAbsent(WORLDS.get(i % WORLDS.size()), key -> new ReplacementQueue()).offer(this.replacements[i]);
+            }
+            return queues;
+        }
+    }
+
+    // Filled once, for offers that don't change it
+    @State(Scope.Thread)
+    public static class Scheduled {
+
+        ReplacementQueue full;
+
+        @Setup
+        public void setup(Replacements replacements) {
+            this.full = new ReplacementQueue();
+            for (LootableContainerReplacer.ReplacementInfo replacementInfo : replacements.replacements) {
+                this.full.offer(replacementInfo);
+            }
+        }
+    }
+
+    // Refilled before every drain, kept apart so the scheduling benchmarks don't pay for it
+    @State(Scope.Thread)
+    public static class Draining {
+
+        Map<RegistryKey<World>, ReplacementQueue> queues;
+
+        @Setup(Level.Invocation)
+        public void fill(Replacements replacements) {
+            this.queues = replacements.schedule();
+        }
+    }
+
+    @Benchmark
+    public Map<RegistryKey<World>, ReplacementQueue> schedule(Replacements replacements) {
+        return replacements.schedule();
+    }
+
+    @Benchmark
+    public boolean scheduleDuplicate(Replacements replacements, Scheduled scheduled) {
+        return scheduled.full.offer(replacements.replacements[0]);
+    }
+
+    @Benchmark
+    public int drainTick(Draining draining, Blackhole blackhole) {
+        return LootableContainerReplacer.drain(WORLDS, draining.queues, MAX_REPLACEMENTS_PER_TICK, MAX_MILLIS_PER_TICK,
+                (worldRegistryKey, replacementInfo) -> {
+                    blackhole.consume(replacementInfo);
+                    return true;
+                });
+    }
+
+    @Benchmark
+    public int drainAll(Draining draining, Blackhole blackhole) {
+        return LootableContainerReplacer.drain(WORLDS, draining.queues, Integer.MAX_VALUE, UNLIMITED_MILLIS,
+                (worldRegistryKey, replacementInfo) -> {
+                    blackhole.consume(replacementInfo);
+                    return true;
+                });
+    }
+}
@@ -3,8 +3,15 @@ package org.spoorn.myloot;
 import lombok.extern.log4j.Log4j2;
 import net.fabricmc.api.ModInitializer;
 import org.spoorn.myloot.block.MyLootBlocks;
+import org.spoorn.myloot.command.MyLootCommands;
+import org.spoorn.myloot.config.ModConfig;
+import org.spoorn.myloot.core.InstancePreparer;
+import org.spoorn.myloot.core.LootResetJob;
 import org.spoorn.myloot.core.LootableContainerReplacer;
 import org.spoorn.myloot.entity.MyLootEntities;
+import org.spoorn.myloot.metrics.MyLootMetrics;
+import org.spoorn.myloot.storage.ExternalLootStorage;
+import org.spoorn.myloot.storage.MyLootContainerIndex;
 import org.spoorn.spoornpacks.client.render.SPTexturedRenderLayers;
 import org.spoorn.spoornpacks.core.generator.ResourceGenerator;
 import org.spoorn.spoornpacks.registry.SpoornPacksRegistry;
@@ -18,6 +25,9 @@ public class MyLoot implements ModInitializer {
     @Override
     public void onInitialize() {
         log.info("Hello from myLoot!");
+
+        // Config
+        ModConfig.init();
         
         // Blocks
         MyLootBlocks.init();
@@ -27,5 +37,19 @@ public class MyLoot implements ModInitializer {
 
         // Container replacement
         LootableContainerReplacer.init();
+
+        // External instance storage
+        ExternalLootStorage.init();
+
+        // Container index and loot resets
+        MyLootContainerIndex.init();
+        LootResetJob.init();
+
+        // Loot copied ahead of time for players near containers
+        InstancePreparer.init();
+
+        // Metrics and commands
+        MyLootMetrics.init();
+        MyLootCommands.init();
     }
 }
@@ -2,13 +2,20 @@ package org.spoorn.myloot.block;
 
 import net.minecraft.block.BarrelBlock;
 import net.minecraft.block.BlockState;
+import net.minecraft.block.InventoryProvider;
 import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.inventory.SidedInventory;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldAccess;
 import org.spoorn.myloot.block.entity.MyLootBarrelBlockEntity;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.storage.MyLootContainerIndex;
 
 import javax.annotation.Nullable;
 
-public class MyLootBarrelBlock extends BarrelBlock {
+public class MyLootBarrelBlock extends BarrelBlock implements InventoryProvider {
     
     public MyLootBarrelBlock(Settings settings) {
         super(settings);
@@ -19,4 +26,22 @@ public class MyLootBarrelBlock extends BarrelBlock {
     public BlockEntity createBlockEntity(BlockPos pos, BlockState state) {
         return new MyLootBarrelBlockEntity(pos, state);
     }
+
+    // Hoppers and droppers ask for this before the block entity, keep them away from the default loot
+    @Override
+    public SidedInventory getInventory(BlockState state, WorldAccess world, BlockPos pos) {
+        return SealedInventory.INSTANCE;
+    }
+
+    // Runs before the block entity is removed, so the break handler can still drop instances that were stored externally
+    @Override
+    public void onStateReplaced(BlockState state, World world, BlockPos pos, BlockState newState, boolean moved) {
+        if (!state.isOf(newState.getBlock()) && world.getBlockEntity(pos) instanceof MyLootContainerBlockEntity myLootContainerBlockEntity) {
+            myLootContainerBlockEntity.releaseExternalInstances();
+            if (world instanceof ServerWorld serverWorld) {
+                MyLootContainerIndex.get(serverWorld).remove(pos);
+            }
+        }
+        super.onStateReplaced(state, world, pos, newState, moved);
+    }
 }
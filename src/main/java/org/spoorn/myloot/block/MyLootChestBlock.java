@@ -3,25 +3,31 @@ package org.spoorn.myloot.block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.ChestBlock;
 import net.minecraft.block.DoubleBlockProperties;
+import net.minecraft.block.InventoryProvider;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.block.entity.ChestBlockEntity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.DoubleInventory;
+import net.minecraft.inventory.SidedInventory;
 import net.minecraft.screen.GenericContainerScreenHandler;
 import net.minecraft.screen.NamedScreenHandlerFactory;
 import net.minecraft.screen.ScreenHandler;
 import net.minecraft.text.Text;
 import net.minecraft.text.TranslatableText;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldAccess;
 import org.jetbrains.annotations.Nullable;
 import org.spoorn.myloot.block.entity.MyLootChestBlockEntity;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
 import org.spoorn.myloot.entity.MyLootEntities;
+import org.spoorn.myloot.storage.MyLootContainerIndex;
 
 import java.util.Optional;
 
-public class MyLootChestBlock extends ChestBlock {
+public class MyLootChestBlock extends ChestBlock implements InventoryProvider {
 
     private static final DoubleBlockProperties.PropertyRetriever<ChestBlockEntity, Optional<NamedScreenHandlerFactory>> NAME_RETRIEVER = new DoubleBlockProperties.PropertyRetriever<>(){
 
@@ -78,9 +84,27 @@ public class MyLootChestBlock extends ChestBlock {
         return new MyLootChestBlockEntity(pos, state);
     }
 
+    // Hoppers and droppers ask for this before the block entity, keep them away from the default loot
+    @Override
+    public SidedInventory getInventory(BlockState state, WorldAccess world, BlockPos pos) {
+        return SealedInventory.INSTANCE;
+    }
+
     @Override
     @Nullable
     public NamedScreenHandlerFactory createScreenHandlerFactory(BlockState state, World world, BlockPos pos) {
         return this.getBlockEntitySource(state, world, pos, false).apply(NAME_RETRIEVER).orElse(null);
     }
+
+    // Runs before the block entity is removed, so the break handler can still drop instances that were stored externally
+    @Override
+    public void onStateReplaced(BlockState state, World world, BlockPos pos, BlockState newState, boolean moved) {
+        if (!state.isOf(newState.getBlock()) && world.getBlockEntity(pos) instanceof MyLootContainerBlockEntity myLootContainerBlockEntity) {
+            myLootContainerBlockEntity.releaseExternalInstances();
+            if (world instanceof ServerWorld serverWorld) {
+                MyLootContainerIndex.get(serverWorld).remove(pos);
+            }
+        }
+        super.onStateReplaced(state, world, pos, newState, moved);
+    }
 }
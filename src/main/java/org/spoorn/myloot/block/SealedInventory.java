@@ -0,0 +1,37 @@
+package org.spoorn.myloot.block;
+
+import net.minecraft.inventory.SimpleInventory;
+import net.minecraft.inventory.SidedInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.math.Direction;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * What hoppers, droppers and other blocks see of a myLoot container: no slots.  The block entity's own inventory is
+ * the default loot every instance is a diff against, so it must not change from the outside.
+ */
+public final class SealedInventory extends SimpleInventory implements SidedInventory {
+
+    public static final SealedInventory INSTANCE = new SealedInventory();
+
+    private static final int[] NO_SLOTS = new int[0];
+
+    private SealedInventory() {
+        super(0);
+    }
+
+    @Override
+    public int[] getAvailableSlots(Direction side) {
+        return NO_SLOTS;
+    }
+
+    @Override
+    public boolean canInsert(int slot, ItemStack stack, @Nullable Direction dir) {
+        return false;
+    }
+
+    @Override
+    public boolean canExtract(int slot, ItemStack stack, Direction dir) {
+        return false;
+    }
+}
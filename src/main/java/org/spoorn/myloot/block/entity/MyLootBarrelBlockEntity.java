@@ -9,10 +9,8 @@ import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.DoubleInventory;
 import net.minecraft.inventory.Inventory;
+import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NbtCompound;
-import net.minecraft.network.Packet;
-import net.minecraft.network.listener.ClientPlayPacketListener;
-import net.minecraft.network.packet.s2c.play.BlockEntityUpdateS2CPacket;
 import net.minecraft.screen.GenericContainerScreenHandler;
 import net.minecraft.screen.ScreenHandler;
 import net.minecraft.sound.SoundCategory;
@@ -29,6 +27,8 @@ import org.spoorn.myloot.entity.MyLootEntities;
 import org.spoorn.myloot.mixin.BlockEntityAccessor;
 
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.UUID;
 
 public class MyLootBarrelBlockEntity extends BarrelBlockEntity implements MyLootContainerBlockEntity {
 
@@ -55,7 +55,7 @@ public class MyLootBarrelBlockEntity extends BarrelBlockEntity implements MyLoot
         protected boolean isPlayerViewing(PlayerEntity player) {
             if (player.currentScreenHandler instanceof GenericContainerScreenHandler) {
                 Inventory inventory = ((GenericContainerScreenHandler)player.currentScreenHandler).getInventory();
-                Inventory thisInventory = MyLootBarrelBlockEntity.this.common.getInventories().get(player.getGameProfile().getId().toString());
+                Inventory thisInventory = MyLootBarrelBlockEntity.this.common.getInstance(player.getUuid());
                 return thisInventory != null && inventory == thisInventory || inventory instanceof DoubleInventory && ((DoubleInventory)inventory).isPart(thisInventory);
             }
             return false;
@@ -78,11 +78,37 @@ public class MyLootBarrelBlockEntity extends BarrelBlockEntity implements MyLoot
         return this.common.hasPlayerOpened(player);
     }
 
+    @Override
+    public boolean hasBeenOpened() {
+        return this.common.hasBeenOpened();
+    }
+
+    @Override
+    public boolean isOpenedOnClient() {
+        return this.common.isOpenedOnClient();
+    }
+
+    // Opened state is synced per player by MyLootNetworking rather than through block entity NBT
+    @Override
+    public void setOpenedOnClient(boolean opened) {
+        this.common.setOpenedOnClient(opened);
+    }
+
     @Nullable
     public Inventory getPlayerInstancedInventory(PlayerEntity player) {
         return this.common.getOrCreateNewInstancedInventoryIfAbsent(player, this.getInvStackList(), this);
     }
 
+    @Override
+    public MyLootContainerBlockEntityCommon.InstanceSnapshot getInstanceSnapshot() {
+        return this.common.snapshot();
+    }
+
+    @Override
+    public List<ItemStack> getPlayerDrops(PlayerEntity player) {
+        return this.common.getDrops(player.getUuid(), this.getInvStackList(), this);
+    }
+
     @Override
     protected ScreenHandler createScreenHandler(int syncId, PlayerInventory playerInventory) {
         return this.common.createScreenHandler(syncId, playerInventory, this.getInvStackList(), this);
@@ -92,7 +118,10 @@ public class MyLootBarrelBlockEntity extends BarrelBlockEntity implements MyLoot
     public void readNbt(NbtCompound nbt) {
         super.readNbt(nbt);
         if (!this.deserializeLootTable(nbt)) {
-            this.common.readNbt(nbt, this);
+            this.common.readNbt(nbt, this.getInvStackList(), this);
+        } else {
+            // Not rolled yet, so there's no myLoot data
+            this.common.setLootTable(this.lootTableId, this.lootTableSeed);
         }
     }
 
@@ -100,7 +129,7 @@ public class MyLootBarrelBlockEntity extends BarrelBlockEntity implements MyLoot
     protected void writeNbt(NbtCompound nbt) {
         super.writeNbt(nbt);
         if (!this.serializeLootTable(nbt)) {
-            this.common.writeNbt(nbt);
+            this.common.writeNbt(nbt, this.getInvStackList(), this);
         }
     }
 
@@ -109,18 +138,6 @@ public class MyLootBarrelBlockEntity extends BarrelBlockEntity implements MyLoot
         this.common.onOpen(player, this);
     }
 
-    // Allow syncing to client
-    @Nullable
-    @Override
-    public Packet<ClientPlayPacketListener> toUpdatePacket() {
-        return BlockEntityUpdateS2CPacket.create(this);
-    }
-
-    @Override
-    public NbtCompound toInitialChunkDataNbt() {
-        return createNbt();
-    }
-
     @Override
     public void onClose(PlayerEntity player) {
         this.common.onClose(player, this);
@@ -136,6 +153,27 @@ public class MyLootBarrelBlockEntity extends BarrelBlockEntity implements MyLoot
         this.common.clear();
     }
 
+    @Override
+    public void releaseExternalInstances() {
+        this.common.releaseExternalInstances(this);
+    }
+
+    @Override
+    public void resetInstances(@Nullable UUID playerId) {
+        this.common.resetInstances(playerId);
+    }
+
+    @Override
+    public void prepareInstance(UUID playerId, long time) {
+        // Roll the loot table now instead of on first open.  Without a player, so their luck doesn't apply, as it
+        // wouldn't for every other player's copy of the loot either.
+        if (this.lootTableId != null) {
+            this.checkLootInteraction(null);
+            this.common.onRolledEarly();
+        }
+        this.common.prepareInstance(playerId, this.getInvStackList(), this, time);
+    }
+
     void setOpen(BlockState state, boolean open) {
         this.world.setBlockState(this.getPos(), (BlockState)state.with(BarrelBlock.OPEN, open), Block.NOTIFY_ALL);
     }
@@ -148,16 +186,17 @@ public class MyLootBarrelBlockEntity extends BarrelBlockEntity implements MyLoot
         this.world.playSound(null, d, e, f, soundEvent, SoundCategory.BLOCKS, 0.5f, this.world.random.nextFloat() * 0.1f + 0.9f);
     }
 
-    /*
-       The following methods just invoke the super method, but are required as a multiplayer server will complain at
-       runtime that these methods which are part of the MyLootContainerBlockEntity interface aren't implemented.
-       Not sure why inheriting superclass methods do not count for interface implementations, but this gets around it.
-    */
     @Override
     public void setLootTable(Identifier id, long seed) {
         super.setLootTable(id, seed);
+        this.common.setLootTable(id, seed);
     }
 
+    /*
+       The following methods just invoke the super method, but are required as a multiplayer server will complain at
+       runtime that these methods which are part of the MyLootContainerBlockEntity interface aren't implemented.
+       Not sure why inheriting superclass methods do not count for interface implementations, but this gets around it.
+    */
     @Override
     public void markDirty() {
         super.markDirty();
@@ -9,10 +9,8 @@ import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.DoubleInventory;
 import net.minecraft.inventory.Inventory;
+import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NbtCompound;
-import net.minecraft.network.Packet;
-import net.minecraft.network.listener.ClientPlayPacketListener;
-import net.minecraft.network.packet.s2c.play.BlockEntityUpdateS2CPacket;
 import net.minecraft.screen.GenericContainerScreenHandler;
 import net.minecraft.screen.ScreenHandler;
 import net.minecraft.sound.SoundCategory;
@@ -28,7 +26,8 @@ import org.spoorn.myloot.block.entity.common.MyLootContainerBlockEntityCommon;
 import org.spoorn.myloot.entity.MyLootEntities;
 
 import javax.annotation.Nullable;
-import java.util.Map;
+import java.util.List;
+import java.util.UUID;
 
 public class MyLootChestBlockEntity extends ChestBlockEntity implements MyLootContainerBlockEntity {
     
@@ -54,7 +53,7 @@ public class MyLootChestBlockEntity extends ChestBlockEntity implements MyLootCo
         protected boolean isPlayerViewing(PlayerEntity player) {
             if (player.currentScreenHandler instanceof GenericContainerScreenHandler) {
                 Inventory inventory = ((GenericContainerScreenHandler)player.currentScreenHandler).getInventory();
-                Inventory thisInventory = MyLootChestBlockEntity.this.common.getInventories().get(player.getGameProfile().getId().toString());
+                Inventory thisInventory = MyLootChestBlockEntity.this.common.getInstance(player.getUuid());
                 return thisInventory != null && inventory == thisInventory || inventory instanceof DoubleInventory && ((DoubleInventory)inventory).isPart(thisInventory);
             }
             return false;
@@ -76,11 +75,37 @@ public class MyLootChestBlockEntity extends ChestBlockEntity implements MyLootCo
         return this.common.hasPlayerOpened(player);
     }
 
+    @Override
+    public boolean hasBeenOpened() {
+        return this.common.hasBeenOpened();
+    }
+
+    @Override
+    public boolean isOpenedOnClient() {
+        return this.common.isOpenedOnClient();
+    }
+
+    // Opened state is synced per player by MyLootNetworking rather than through block entity NBT
+    @Override
+    public void setOpenedOnClient(boolean opened) {
+        this.common.setOpenedOnClient(opened);
+    }
+
     @Nullable
     public Inventory getPlayerInstancedInventory(PlayerEntity player) {
         return this.common.getOrCreateNewInstancedInventoryIfAbsent(player, this.getInvStackList(), this);
     }
 
+    @Override
+    public MyLootContainerBlockEntityCommon.InstanceSnapshot getInstanceSnapshot() {
+        return this.common.snapshot();
+    }
+
+    @Override
+    public List<ItemStack> getPlayerDrops(PlayerEntity player) {
+        return this.common.getDrops(player.getUuid(), this.getInvStackList(), this);
+    }
+
     @Override
     protected ScreenHandler createScreenHandler(int syncId, PlayerInventory playerInventory) {
         return this.common.createScreenHandler(syncId, playerInventory, this.getInvStackList(), this);
@@ -90,7 +115,10 @@ public class MyLootChestBlockEntity extends ChestBlockEntity implements MyLootCo
     public void readNbt(NbtCompound nbt) {
         super.readNbt(nbt);
         if (!this.deserializeLootTable(nbt)) {
-            this.common.readNbt(nbt, this);
+            this.common.readNbt(nbt, this.getInvStackList(), this);
+        } else {
+            // Not rolled yet, so there's no myLoot data
+            this.common.setLootTable(this.lootTableId, this.lootTableSeed);
         }
     }
 
@@ -98,7 +126,7 @@ public class MyLootChestBlockEntity extends ChestBlockEntity implements MyLootCo
     protected void writeNbt(NbtCompound nbt) {
         super.writeNbt(nbt);
         if (!this.serializeLootTable(nbt)) {
-            this.common.writeNbt(nbt);
+            this.common.writeNbt(nbt, this.getInvStackList(), this);
         }
     }
 
@@ -107,18 +135,6 @@ public class MyLootChestBlockEntity extends ChestBlockEntity implements MyLootCo
         this.common.onOpen(player, this);
     }
 
-    // Allow syncing to client
-    @Nullable
-    @Override
-    public Packet<ClientPlayPacketListener> toUpdatePacket() {
-        return BlockEntityUpdateS2CPacket.create(this);
-    }
-
-    @Override
-    public NbtCompound toInitialChunkDataNbt() {
-        return createNbt();
-    }
-
     @Override
     public void onClose(PlayerEntity player) {
         this.common.onClose(player, this);
@@ -134,12 +150,29 @@ public class MyLootChestBlockEntity extends ChestBlockEntity implements MyLootCo
         this.common.clear();
     }
 
-    public Map<String, MyLootInventory> getInventories() {
-        return this.common.getInventories();
+    @Override
+    public void releaseExternalInstances() {
+        this.common.releaseExternalInstances(this);
+    }
+
+    @Override
+    public void resetInstances(@Nullable UUID playerId) {
+        this.common.resetInstances(playerId);
+    }
+
+    @Override
+    public void prepareInstance(UUID playerId, long time) {
+        // Roll the loot table now instead of on first open.  Without a player, so their luck doesn't apply, as it
+        // wouldn't for every other player's copy of the loot either.
+        if (this.lootTableId != null) {
+            this.checkLootInteraction(null);
+            this.common.onRolledEarly();
+        }
+        this.common.prepareInstance(playerId, this.getInvStackList(), this, time);
     }
 
-    public void setInventories(Map<String, MyLootInventory> inventories) {
-        this.common.setInventories(inventories);
+    public void swapInstances(MyLootChestBlockEntity other) {
+        this.common.swapInstances(other.common);
     }
 
     static void playSound(World world, BlockPos pos, BlockState state, SoundEvent soundEvent) {
@@ -158,16 +191,17 @@ public class MyLootChestBlockEntity extends ChestBlockEntity implements MyLootCo
         world.playSound(null, d, e, f, soundEvent, SoundCategory.BLOCKS, 0.5f, world.random.nextFloat() * 0.1f + 0.9f);
     }
 
-    /*
-       The following methods just invoke the super method, but are required as a multiplayer server will complain at
-       runtime that these methods which are part of the MyLootContainerBlockEntity interface aren't implemented.
-       Not sure why inheriting superclass methods do not count for interface implementations, but this gets around it.
-    */
     @Override
     public void setLootTable(Identifier id, long seed) {
         super.setLootTable(id, seed);
+        this.common.setLootTable(id, seed);
     }
 
+    /*
+       The following methods just invoke the super method, but are required as a multiplayer server will complain at
+       runtime that these methods which are part of the MyLootContainerBlockEntity interface aren't implemented.
+       Not sure why inheriting superclass methods do not count for interface implementations, but this gets around it.
+    */
     @Override
     public void markDirty() {
         super.markDirty();
@@ -2,10 +2,14 @@ package org.spoorn.myloot.block.entity;
 
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.inventory.Inventory;
+import net.minecraft.item.ItemStack;
 import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
+import org.spoorn.myloot.block.entity.common.MyLootContainerBlockEntityCommon;
 
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.UUID;
 
 public interface MyLootContainerBlockEntity {
 
@@ -23,6 +27,47 @@ public interface MyLootContainerBlockEntity {
 
     boolean hasPlayerOpened(PlayerEntity player);
 
+    /**
+     * @return true if any player has opened this container
+     */
+    boolean hasBeenOpened();
+
+    /**
+     * Client only.  Whether the local player has opened this container, checked every frame when rendering.
+     */
+    boolean isOpenedOnClient();
+
+    void setOpenedOnClient(boolean opened);
+
     @Nullable
     Inventory getPlayerInstancedInventory(PlayerEntity player);
+
+    /**
+     * @return the instance state last published by the server thread.  Safe to call from any thread, e.g. by
+     * {@link org.spoorn.myloot.metrics.MyLootMetrics}.
+     */
+    MyLootContainerBlockEntityCommon.InstanceSnapshot getInstanceSnapshot();
+
+    /**
+     * @return the loot player gets when breaking this container, without creating an instance for them.  Stacks may
+     * be shared, copy them before use.
+     */
+    List<ItemStack> getPlayerDrops(PlayerEntity player);
+
+    /**
+     * Moves any instances kept outside the chunk back into the block entity, before it is removed from the world.
+     */
+    void releaseExternalInstances();
+
+    /**
+     * Drops the in-memory instances and opened state after a reset, see
+     * {@link MyLootContainerBlockEntityCommon#resetInstances}.
+     */
+    void resetInstances(@Nullable UUID playerId);
+
+    /**
+     * Prepares the instance of a player who is likely to open this container soon, rolling the loot table first if
+     * it hasn't been yet.  Called on the server thread.  Does nothing if the player already has an instance.
+     */
+    void prepareInstance(UUID playerId, long time);
 }
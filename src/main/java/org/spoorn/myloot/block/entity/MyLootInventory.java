@@ -1,47 +1,424 @@
 package org.spoorn.myloot.block.entity;
 
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import lombok.ToString;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.inventory.Inventories;
 import net.minecraft.inventory.Inventory;
 import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
 import net.minecraft.util.collection.DefaultedList;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A player's instance of a myLoot container.
+ *
+ * Instances are copy-on-write over the loot rolled by the parent container.  Until the instance is accessed through
+ * the {@link Inventory} API, reads go through to the shared default list and nothing is copied.
+ */
 @ToString
 public class MyLootInventory implements Inventory {
 
-    private final DefaultedList<ItemStack> inventory;
+    private static final int SIZE = 27;
+    // How far the saved last access time may lag behind, so merely opening an instance doesn't re-encode it every time
+    private static final long ACCESS_PRECISION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // Shared loot rolled by the parent container, or this player's own roll, never modified through this instance
+    @Nullable
+    private final DefaultedList<ItemStack> defaultList;
+    // Whether defaultList is this player's own roll, which is saved with the instance as "Roll"
+    private boolean ownRoll = false;
+    // This instance's private copy, null until materialized
+    @Nullable
+    private DefaultedList<ItemStack> inventory;
     // Back reference to the parent ChestBlockEntity.  This causes a circular loop, but gives us access to lots of
     // necessary APIs.
     private final MyLootContainerBlockEntity parent;
-    
+    // Whether this instance changed since it was last serialized, and the result of that serialization
+    private boolean dirty = true;
+    @Nullable
+    private NbtCompound cachedNbt;
+    // When this instance was created, and when the player last opened it, in epoch millis.  Last access is saved
+    // as savedLastAccess in cachedNbt.
+    private long createdAt = System.currentTimeMillis();
+    private long lastAccess = this.createdAt;
+    private long savedLastAccess = this.lastAccess;
+
     public MyLootInventory(MyLootContainerBlockEntity parent) {
-        this(DefaultedList.ofSize(27, ItemStack.EMPTY), parent);
+        this(null, DefaultedList.ofSize(SIZE, ItemStack.EMPTY), parent);
+    }
+
+    /**
+     * Creates a pristine instance that reads through to defaultList until it is materialized.
+     */
+    public MyLootInventory(DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity parent) {
+        this(defaultList, null, parent);
     }
-    
-    public MyLootInventory(DefaultedList<ItemStack> inventory, MyLootContainerBlockEntity parent) {
+
+    public MyLootInventory(@Nullable DefaultedList<ItemStack> defaultList, @Nullable DefaultedList<ItemStack> inventory, MyLootContainerBlockEntity parent) {
+        this.defaultList = defaultList;
         this.inventory = inventory;
         this.parent = parent;
     }
-    
+
+    /**
+     * Creates a pristine instance over the player's own roll of the parent's loot table, see perPlayerLootRolls.
+     */
+    public static MyLootInventory ofOwnRoll(DefaultedList<ItemStack> roll, MyLootContainerBlockEntity parent) {
+        MyLootInventory inventory = new MyLootInventory(roll, parent);
+        inventory.ownRoll = true;
+        return inventory;
+    }
+
+    /**
+     * @return true if this instance has never been materialized, and so is still identical to the default loot
+     */
+    public boolean isPristine() {
+        return this.inventory == null;
+    }
+
+    /**
+     * @return true if this instance is over the player's own roll, see perPlayerLootRolls
+     */
+    public boolean isOwnRoll() {
+        return this.ownRoll;
+    }
+
+    /**
+     * @return true if this instance holds the same stacks as the default loot, materialized or not
+     */
+    public boolean matchesDefaults() {
+        if (this.inventory == null) {
+            return true;
+        }
+        if (this.defaultList == null) {
+            return false;
+        }
+        for (int i = 0; i < this.inventory.size(); ++i) {
+            if (!ItemStack.areEqual(this.inventory.get(i), defaultStack(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a slot without materializing this instance.  The returned stack may be shared with the default loot and
+     * other players' instances, so it must not be modified.
+     */
+    public ItemStack peekStack(int slot) {
+        return this.inventory != null ? this.inventory.get(slot) : defaultStack(slot);
+    }
+
+    private ItemStack defaultStack(int slot) {
+        return this.defaultList != null && slot < this.defaultList.size() ? this.defaultList.get(slot) : ItemStack.EMPTY;
+    }
+
+    public long getCreatedAt() {
+        return this.createdAt;
+    }
+
+    public long getLastAccess() {
+        return this.lastAccess;
+    }
+
+    /**
+     * Records that the player accessed this instance at now, in epoch millis.
+     */
+    public void touch(long now) {
+        this.lastAccess = now;
+        if (now - this.savedLastAccess >= ACCESS_PRECISION_MILLIS) {
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * @return true if this instance needs to be re-encoded on the next save
+     */
+    public boolean isDirty() {
+        return this.dirty || this.cachedNbt == null;
+    }
+
+    /**
+     * @return the compound this instance was last encoded to or read from, or null if it never was.  It is never
+     * modified afterwards, so it can be read from any thread.
+     */
+    @Nullable
+    public NbtCompound getEncoded() {
+        return this.cachedNbt;
+    }
+
+    /**
+     * Forces this instance to be re-encoded on the next save.
+     */
+    public void invalidateNbt() {
+        this.dirty = true;
+    }
+
+    /**
+     * Serializes this instance with {@link #writeDelta}, reusing the previous result if nothing changed since.  The
+     * returned compound is shared with later saves, so it must not be modified.
+     */
+    public NbtCompound toNbt(UUID playerId) {
+        if (isDirty()) {
+            NbtCompound nbt = new NbtCompound();
+            nbt.putUuid("id", playerId);
+            nbt.putLong("Created", this.createdAt);
+            nbt.putLong("LastAccess", this.lastAccess);
+            if (this.ownRoll) {
+                nbt.putBoolean("OwnRoll", true);
+                // Loot tables aren't repeatable, e.g. exploration maps search for a structure and make a new map
+                // every time, so the roll is kept rather than rolled again
+                NbtList roll = new NbtList();
+                for (int i = 0; i < SIZE; ++i) {
+                    ItemStack stack = defaultStack(i);
+                    if (!stack.isEmpty()) {
+                        NbtCompound nbtCompound = new NbtCompound();
+                        nbtCompound.putByte("Slot", (byte) i);
+                        stack.writeNbt(nbtCompound);
+                        roll.add(nbtCompound);
+                    }
+                }
+                nbt.put("Roll", roll);
+            }
+            writeDelta(nbt);
+            this.savedLastAccess = this.lastAccess;
+            this.cachedNbt = nbt;
+            this.dirty = false;
+        }
+        return this.cachedNbt;
+    }
+
+    /**
+     * Writes this instance as a diff against the default loot.  Slots emptied by the player are written to "Removed",
+     * slots where only the count changed to "Counts" as packed (slot << 16 | count), and anything else as full stacks
+     * to "Items".  Nothing is written for instances that match the default loot.
+     */
+    public void writeDelta(NbtCompound nbt) {
+        if (this.inventory == null) {
+            return;
+        }
+
+        ByteArrayList removed = null;
+        IntArrayList counts = null;
+        NbtList items = null;
+        for (int i = 0; i < SIZE; ++i) {
+            ItemStack stack = this.inventory.get(i);
+            ItemStack defaultStack = defaultStack(i);
+            if (ItemStack.areEqual(stack, defaultStack)) {
+                continue;
+            }
+
+            if (stack.isEmpty()) {
+                if (removed == null) {
+                    removed = new ByteArrayList();
+                }
+                removed.add((byte) i);
+            } else if (!defaultStack.isEmpty() && ItemStack.canCombine(stack, defaultStack)) {
+                if (counts == null) {
+                    counts = new IntArrayList();
+                }
+                counts.add(i << 16 | (stack.getCount() & 0xFFFF));
+            } else {
+                if (items == null) {
+                    items = new NbtList();
+                }
+                NbtCompound nbtCompound = new NbtCompound();
+                nbtCompound.putByte("Slot", (byte) i);
+                stack.writeNbt(nbtCompound);
+                items.add(nbtCompound);
+            }
+        }
+
+        if (removed != null) {
+            nbt.putByteArray("Removed", removed.toByteArray());
+        }
+        if (counts != null) {
+            nbt.putIntArray("Counts", counts.toIntArray());
+        }
+        if (items != null) {
+            nbt.put("Items", items);
+        }
+    }
+
+    /**
+     * Reads an instance written by {@link #toNbt}.  The compound is kept and re-used on save until the instance changes.
+     *
+     * @param defaultList the loot the instance was written against, the player's own roll if {@link #hasOwnRoll}
+     */
+    public static MyLootInventory readDelta(NbtCompound nbt, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity parent) {
+        MyLootInventory inventory = new MyLootInventory(defaultList, parent);
+        inventory.cachedNbt = nbt;
+        inventory.dirty = false;
+        inventory.createdAt = getCreatedAt(nbt, inventory.createdAt);
+        inventory.lastAccess = getLastAccess(nbt, inventory.lastAccess);
+        inventory.savedLastAccess = inventory.lastAccess;
+        inventory.ownRoll = hasOwnRoll(nbt);
+        if (!hasChanges(nbt)) {
+            return inventory;
+        }
+
+        DefaultedList<ItemStack> items = inventory.materialize();
+        // Removed and Counts only make sense over the stack they were written against.  If the default loot has no
+        // stack there anymore they're skipped, rather than changing the count of ItemStack.EMPTY.
+        for (byte slot : nbt.getByteArray("Removed")) {
+            int i = slot & 0xFF;
+            if (i < SIZE && !items.get(i).isEmpty()) {
+                items.set(i, ItemStack.EMPTY);
+            }
+        }
+        for (int packed : nbt.getIntArray("Counts")) {
+            int i = packed >>> 16;
+            int count = packed & 0xFFFF;
+            if (i < SIZE && !items.get(i).isEmpty() && count > 0) {
+                items.get(i).setCount(Math.min(count, items.get(i).getMaxCount()));
+            }
+        }
+        NbtList nbtList = nbt.getList("Items", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < nbtList.size(); ++i) {
+            NbtCompound nbtCompound = nbtList.getCompound(i);
+            int j = nbtCompound.getByte("Slot") & 0xFF;
+            if (j < SIZE) {
+                items.set(j, ItemStack.fromNbt(nbtCompound));
+            }
+        }
+        return inventory;
+    }
+
+    /**
+     * @return the creation time of an instance written by {@link #toNbt}, or fallback for instances saved before it
+     * was tracked
+     */
+    public static long getCreatedAt(NbtCompound nbt, long fallback) {
+        return nbt.contains("Created", NbtElement.LONG_TYPE) ? nbt.getLong("Created") : fallback;
+    }
+
+    /**
+     * @return the last access time of an instance written by {@link #toNbt}, or fallback for instances saved before
+     * it was tracked
+     */
+    public static long getLastAccess(NbtCompound nbt, long fallback) {
+        return nbt.contains("LastAccess", NbtElement.LONG_TYPE) ? nbt.getLong("LastAccess") : fallback;
+    }
+
+    /**
+     * @return true if an instance written by {@link #toNbt} is a diff against the player's own roll rather than the
+     * container's shared loot
+     */
+    public static boolean hasOwnRoll(NbtCompound nbt) {
+        return nbt.getBoolean("OwnRoll");
+    }
+
+    /**
+     * @return the player's own roll saved with an instance written by {@link #toNbt}, or null if it isn't one or was
+     * saved before rolls were kept
+     */
+    @Nullable
+    public static DefaultedList<ItemStack> readRoll(NbtCompound nbt) {
+        if (!hasOwnRoll(nbt) || !nbt.contains("Roll", NbtElement.LIST_TYPE)) {
+            return null;
+        }
+        DefaultedList<ItemStack> roll = DefaultedList.ofSize(SIZE, ItemStack.EMPTY);
+        NbtList nbtList = nbt.getList("Roll", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < nbtList.size(); ++i) {
+            NbtCompound nbtCompound = nbtList.getCompound(i);
+            int j = nbtCompound.getByte("Slot") & 0xFF;
+            if (j < SIZE) {
+                roll.set(j, ItemStack.fromNbt(nbtCompound));
+            }
+        }
+        return roll;
+    }
+
+    /**
+     * @return true if an instance written by {@link #toNbt} has to be saved, i.e. differs from the default loot or
+     * holds the player's own roll
+     */
+    public static boolean needsSaving(NbtCompound nbt) {
+        return hasChanges(nbt) || hasOwnRoll(nbt);
+    }
+
+    /**
+     * @return true if an instance written by {@link #toNbt} differs from the default loot
+     */
+    public static boolean hasChanges(NbtCompound nbt) {
+        return nbt.contains("Removed") || nbt.contains("Counts") || nbt.contains("Items");
+    }
+
+    private DefaultedList<ItemStack> materialize() {
+        if (this.inventory == null) {
+            this.inventory = cloneLoot(this.defaultList != null ? this.defaultList : List.of());
+        }
+        return this.inventory;
+    }
+
+    /**
+     * Materializes this pristine instance with a copy of its default loot that was already made, see
+     * {@link org.spoorn.myloot.core.InstancePreparer}.
+     *
+     * @param source the stacks clonedList was copied from
+     * @return false if this instance was already materialized, or its default loot isn't the same stacks as source
+     */
+    public boolean materializeFrom(List<ItemStack> source, DefaultedList<ItemStack> clonedList) {
+        if (this.inventory != null || this.defaultList == null || this.defaultList.size() != source.size()) {
+            return false;
+        }
+        for (int i = 0; i < source.size(); ++i) {
+            if (this.defaultList.get(i) != source.get(i)) {
+                return false;
+            }
+        }
+        this.inventory = clonedList;
+        return true;
+    }
+
+    /**
+     * Copies loot into a new list of SIZE stacks.  Only reads loot, so it can run off the server thread on a list
+     * nobody modifies.  ItemStack.copy copies the NBT too, and doesn't need a mixin, so this also works in the
+     * benchmarks.
+     */
+    public static DefaultedList<ItemStack> cloneLoot(List<ItemStack> loot) {
+        DefaultedList<ItemStack> clonedList = DefaultedList.ofSize(SIZE, ItemStack.EMPTY);
+        for (int i = 0; i < SIZE && i < loot.size(); ++i) {
+            ItemStack defaultItemStack = loot.get(i);
+            if (!defaultItemStack.isEmpty()) {
+                clonedList.set(i, defaultItemStack.copy());
+            }
+        }
+        return clonedList;
+    }
+
     @Override
     public int size() {
-        return this.inventory.size();
+        return SIZE;
     }
 
     @Override
     public boolean isEmpty() {
-        return this.inventory.stream().allMatch(ItemStack::isEmpty);
+        for (int i = 0; i < SIZE; ++i) {
+            if (!peekStack(i).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    // Screen handlers modify the returned stack in place, so this has to materialize too
     @Override
     public ItemStack getStack(int slot) {
-        return this.inventory.get(slot);
+        return materialize().get(slot);
     }
 
     @Override
     public ItemStack removeStack(int slot, int amount) {
-        ItemStack itemStack = Inventories.splitStack(this.inventory, slot, amount);
+        ItemStack itemStack = Inventories.splitStack(materialize(), slot, amount);
         if (!itemStack.isEmpty()) {
             this.markDirty();
         }
@@ -50,12 +427,13 @@ public class MyLootInventory implements Inventory {
 
     @Override
     public ItemStack removeStack(int slot) {
-        return Inventories.removeStack(this.inventory, slot);
+        this.dirty = true;
+        return Inventories.removeStack(materialize(), slot);
     }
 
     @Override
     public void setStack(int slot, ItemStack stack) {
-        this.inventory.set(slot, stack);
+        materialize().set(slot, stack);
         if (stack.getCount() > this.getMaxCountPerStack()) {
             stack.setCount(this.getMaxCountPerStack());
         }
@@ -74,6 +452,7 @@ public class MyLootInventory implements Inventory {
 
     @Override
     public void markDirty() {
+        this.dirty = true;
         this.parent.markDirty();
     }
 
@@ -84,6 +463,7 @@ public class MyLootInventory implements Inventory {
 
     @Override
     public void clear() {
-        this.inventory.clear();
+        this.dirty = true;
+        this.inventory = DefaultedList.ofSize(SIZE, ItemStack.EMPTY);
     }
 }
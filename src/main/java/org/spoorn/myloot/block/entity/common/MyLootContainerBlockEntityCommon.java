@@ -1,38 +1,79 @@
 package org.spoorn.myloot.block.entity.common;
 
+import it.unimi.dsi.fastutil.HashCommon;
 import lombok.Getter;
-import lombok.Setter;
-import net.minecraft.block.Block;
+import net.minecraft.advancement.criterion.Criteria;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.block.entity.ViewerCountManager;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.Inventory;
+import net.minecraft.inventory.SimpleInventory;
 import net.minecraft.item.ItemStack;
+import net.minecraft.loot.context.LootContext;
+import net.minecraft.loot.context.LootContextParameters;
+import net.minecraft.loot.context.LootContextTypes;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtHelper;
 import net.minecraft.nbt.NbtList;
-import net.minecraft.nbt.NbtString;
 import net.minecraft.screen.GenericContainerScreenHandler;
 import net.minecraft.screen.ScreenHandler;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
 import net.minecraft.util.collection.DefaultedList;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
+import org.jetbrains.annotations.Nullable;
 import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
 import org.spoorn.myloot.block.entity.MyLootInventory;
-import org.spoorn.myloot.mixin.ItemStackAccessor;
+import org.spoorn.myloot.config.ModConfig;
+import org.spoorn.myloot.core.InstancePreparer;
+import org.spoorn.myloot.metrics.MyLootMetrics;
+import org.spoorn.myloot.network.MyLootNetworking;
+import org.spoorn.myloot.storage.ExternalLootStorage;
+import org.spoorn.myloot.storage.MyLootContainerIndex;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class MyLootContainerBlockEntityCommon {
     
     private static final String NBT_KEY = "myLoot";
+    // Version 1 had no version key, and keyed instances by the player UUID's String form.
+    // Version 2 keyed instances by UUID and wrote each instance in full.
+    // Version 3 writes each instance as a diff against the container's default loot, which is saved once in Items.
+    private static final int NBT_VERSION = 3;
 
-    @Getter
-    @Setter
-    private Map<String, MyLootInventory> inventories = new HashMap<>();
-    private final Set<String> playersOpened = new HashSet<>();
+    // The state below is only touched on the server thread.  Other threads read the copy published to snapshot.
+    private Map<UUID, MyLootInventory> inventories = new HashMap<>();
+    // Instances read from NBT but not decoded yet, kept as is until their player needs them
+    private Map<UUID, NbtCompound> pendingInstances = new HashMap<>();
+    private final Set<UUID> playersOpened = new HashSet<>();
+    // Players whose changed instance was evicted, who find the container empty if they open it again
+    private Set<UUID> playersEvicted = new HashSet<>();
+    // Instances prepared for players close by, see InstancePreparer.  Never saved.
+    private final Map<UUID, InstancePreparer.PreparedLoot> preparedLoot = new HashMap<>();
+    // Whether the loot table was rolled by InstancePreparer rather than by a player opening the container, who is
+    // still owed the loot criterion
+    private boolean rolledEarly = false;
+    // Last written myLoot compound, re-used as long as nothing changed.  Instances track their own changes.
+    private NbtCompound cachedRoot;
+    private boolean dirty = true;
+    // Whether instances are kept in ExternalLootStorage rather than this container's NBT.  Those not in inventories
+    // yet are loaded the first time they're needed.
+    private boolean external = false;
+    // Loot table the default loot was rolled from, kept so it can be re-rolled by a reset
+    @Nullable
+    private Identifier lootTableId;
+    private long lootTableSeed;
+    // Read-only copy of the state above, re-published by the server thread whenever it changes
+    private volatile InstanceSnapshot snapshot = InstanceSnapshot.EMPTY;
+    // Client only, whether the local player has opened this container as synced by MyLootNetworking
+    private boolean openedOnClient = false;
     
     private final ViewerCountManager stateManager;
     
@@ -41,86 +82,630 @@ public class MyLootContainerBlockEntityCommon {
     }
 
     public boolean hasPlayerOpened(PlayerEntity player) {
-        return this.playersOpened.contains(player.getGameProfile().getId().toString());
+        return hasPlayerOpened(player.getUuid());
+    }
+
+    public boolean hasPlayerOpened(UUID playerId) {
+        return this.playersOpened.contains(playerId);
+    }
+
+    public boolean hasBeenOpened() {
+        return !this.playersOpened.isEmpty();
+    }
+
+    public boolean isOpenedOnClient() {
+        return this.openedOnClient;
+    }
+
+    public void setOpenedOnClient(boolean opened) {
+        this.openedOnClient = opened;
+    }
+
+    /**
+     * @return the player's decoded instance, or null.  Server thread only.
+     */
+    @Nullable
+    public MyLootInventory getInstance(UUID playerId) {
+        return this.inventories.get(playerId);
+    }
+
+    /**
+     * @return the container's state as last published by the server thread, for reading from any thread, e.g. by
+     * chunk saving or metrics.  Never blocks.
+     */
+    public InstanceSnapshot snapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Publishes the current state to {@link #snapshot}.  Called on the server thread after every change to the
+     * instances, the opened or evicted players, or the encoded NBT.  Changes to the contents of a decoded instance
+     * are published as it is encoded on the next save.
+     */
+    private void publish() {
+        Set<UUID> instances = new HashSet<>(this.inventories.keySet());
+        instances.addAll(this.pendingInstances.keySet());
+        Map<UUID, NbtCompound> encodedInstances = new HashMap<>(this.pendingInstances);
+        for (Map.Entry<UUID, MyLootInventory> entry : this.inventories.entrySet()) {
+            NbtCompound encoded = entry.getValue().getEncoded();
+            if (encoded != null) {
+                encodedInstances.put(entry.getKey(), encoded);
+            }
+        }
+        this.snapshot = new InstanceSnapshot(Set.copyOf(this.playersOpened), Set.copyOf(instances), Set.copyOf(this.playersEvicted),
+                this.external, this.cachedRoot, Map.copyOf(encodedInstances));
+    }
+
+    public void setLootTable(@Nullable Identifier id, long seed) {
+        if (id != null && (!id.equals(this.lootTableId) || seed != this.lootTableSeed)) {
+            this.lootTableId = id;
+            this.lootTableSeed = seed;
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Swaps all players' instances with another container, e.g. when a double chest is rotated.
+     */
+    public void swapInstances(MyLootContainerBlockEntityCommon other) {
+        Map<UUID, MyLootInventory> inventories = this.inventories;
+        this.inventories = other.inventories;
+        other.inventories = inventories;
+        Map<UUID, NbtCompound> pendingInstances = this.pendingInstances;
+        this.pendingInstances = other.pendingInstances;
+        other.pendingInstances = pendingInstances;
+        Set<UUID> playersEvicted = this.playersEvicted;
+        this.playersEvicted = other.playersEvicted;
+        other.playersEvicted = playersEvicted;
+        this.dirty = true;
+        other.dirty = true;
+        publish();
+        other.publish();
     }
 
     public ScreenHandler createScreenHandler(int syncId, PlayerInventory playerInventory, 
                                                 DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
         PlayerEntity player = playerInventory.player;
-        Inventory inventory = getOrCreateNewInstancedInventoryIfAbsent(player, defaultList, myLootContainerBlockEntity);
+        // Instances due for a refresh are replaced as their player opens the container, nothing looks for them
+        // otherwise
+        int refreshMinutes = ModConfig.get().lootRefreshMinutes;
+        long refreshBefore = refreshMinutes > 0 ? System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(refreshMinutes) : Long.MIN_VALUE;
+        if (this.rolledEarly) {
+            this.rolledEarly = false;
+            if (player instanceof ServerPlayerEntity serverPlayer && this.lootTableId != null) {
+                Criteria.PLAYER_GENERATES_CONTAINER_LOOT.trigger(serverPlayer, this.lootTableId);
+            }
+        }
+        InstancePreparer.PreparedLoot prepared = this.preparedLoot.remove(player.getUuid());
+        MyLootInventory inventory = getOrCreateInstance(player.getUuid(), defaultList, myLootContainerBlockEntity, refreshBefore,
+                prepared != null ? prepared.getRoll() : null);
+        if (prepared != null) {
+            DefaultedList<ItemStack> clonedList = prepared.getClone();
+            if (clonedList != null && inventory.materializeFrom(prepared.getSnapshot(), clonedList)) {
+                MyLootMetrics.INSTANCES_PREPARED.increment();
+            }
+        }
         return GenericContainerScreenHandler.createGeneric9x3(syncId, playerInventory, inventory);
     }
     
     public Inventory getOrCreateNewInstancedInventoryIfAbsent(PlayerEntity player, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
-        String playerId = player.getGameProfile().getId().toString();
-        MyLootInventory myLootInventory;
-        if (!this.inventories.containsKey(playerId)) {
-            DefaultedList<ItemStack> clonedList = DefaultedList.ofSize(27, ItemStack.EMPTY);
-            for (int i = 0; i < defaultList.size(); ++i) {
-                ItemStack defaultItemStack = defaultList.get(i);
-                clonedList.set(i, ItemStackAccessor.create(defaultItemStack.getItem(), defaultItemStack.getCount(), Optional.ofNullable(defaultItemStack.getNbt())));
-            }
-            myLootInventory = new MyLootInventory(clonedList, myLootContainerBlockEntity);
+        return getOrCreateNewInstancedInventoryIfAbsent(player.getUuid(), defaultList, myLootContainerBlockEntity);
+    }
+
+    public Inventory getOrCreateNewInstancedInventoryIfAbsent(UUID playerId, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
+        return getOrCreateInstance(playerId, defaultList, myLootContainerBlockEntity, Long.MIN_VALUE, null);
+    }
+
+    /**
+     * Collects the loot a player gets when breaking the container.  Unlike {@link #getOrCreateNewInstancedInventoryIfAbsent},
+     * players without an instance don't get one, so nothing is cloned for them.  The returned stacks may be shared
+     * with the default loot or an instance, so they must be copied before being handed out.
+     */
+    public List<ItemStack> getDrops(UUID playerId, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
+        if (this.playersEvicted.contains(playerId)) {
+            return List.of();
+        }
+        if (this.inventories.containsKey(playerId) || this.pendingInstances.containsKey(playerId) || this.external) {
+            MyLootInventory myLootInventory = getOrCreateInstance(playerId, defaultList, myLootContainerBlockEntity, Long.MIN_VALUE, null);
+            List<ItemStack> drops = new ArrayList<>(myLootInventory.size());
+            for (int i = 0; i < myLootInventory.size(); ++i) {
+                drops.add(myLootInventory.peekStack(i));
+            }
+            return drops;
+        }
+        DefaultedList<ItemStack> roll = ModConfig.get().perPlayerLootRolls ? rollForPlayer(playerId, myLootContainerBlockEntity) : null;
+        return roll != null ? roll : defaultList;
+    }
+
+    /**
+     * Prepares a player's instance ahead of them opening the container: their own roll if perPlayerLootRolls is
+     * enabled, and a copy of the loot their instance reads from.  Does nothing if the player already has an instance
+     * that isn't a pristine copy of the default loot, or it isn't decoded yet.  Called on the server thread, after
+     * the container's loot table was rolled.
+     */
+    public void prepareInstance(UUID playerId, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity, long time) {
+        if (!this.preparedLoot.isEmpty()) {
+            this.preparedLoot.values().removeIf(prepared -> prepared.isExpired(time));
+        }
+        if (this.preparedLoot.containsKey(playerId) || this.external || this.playersEvicted.contains(playerId)
+                || this.pendingInstances.containsKey(playerId)) {
+            return;
+        }
+        MyLootInventory myLootInventory = this.inventories.get(playerId);
+        if (myLootInventory != null) {
+            if (myLootInventory.isPristine() && !myLootInventory.isOwnRoll()) {
+                this.preparedLoot.put(playerId, InstancePreparer.prepare(defaultList, time));
+            }
+            return;
+        }
+        DefaultedList<ItemStack> roll = ModConfig.get().perPlayerLootRolls ? rollForPlayer(playerId, myLootContainerBlockEntity) : null;
+        this.preparedLoot.put(playerId, roll != null ? InstancePreparer.prepareRoll(roll, time) : InstancePreparer.prepare(defaultList, time));
+    }
+
+    /**
+     * Called when the container's loot table was rolled by InstancePreparer, so the first player to open it still
+     * gets the loot criterion as they would have if they had rolled it.
+     */
+    public void onRolledEarly() {
+        this.rolledEarly = true;
+    }
+
+    /**
+     * @param refreshBefore an existing instance created before this time, in epoch millis, is replaced by a fresh
+     *                      copy of the default loot
+     * @param preparedRoll  the player's own roll made ahead of time, used instead of rolling it if they get a new instance
+     */
+    private MyLootInventory getOrCreateInstance(UUID playerId, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity,
+                                                long refreshBefore, @Nullable DefaultedList<ItemStack> preparedRoll) {
+        long now = System.currentTimeMillis();
+        // Instances not decoded yet are checked for a refresh before decoding them
+        MyLootInventory myLootInventory = this.inventories.get(playerId);
+        NbtCompound stored = null;
+        if (myLootInventory == null) {
+            stored = this.pendingInstances.remove(playerId);
+            if (stored == null && this.external && myLootContainerBlockEntity instanceof BlockEntity blockEntity
+                    && blockEntity.getWorld() instanceof ServerWorld serverWorld) {
+                stored = ExternalLootStorage.read(serverWorld, blockEntity.getPos(), playerId);
+            }
+        }
+
+        long createdAt = myLootInventory != null ? myLootInventory.getCreatedAt() : stored != null ? MyLootInventory.getCreatedAt(stored, now) : now;
+        boolean changed = false;
+        if (createdAt < refreshBefore) {
+            // Dropped from external storage too, as the fresh instance overwrites it on the next save
+            this.inventories.remove(playerId);
+            myLootInventory = null;
+            this.dirty = true;
+            changed = true;
+            MyLootMetrics.INSTANCES_REFRESHED.increment();
+        } else if (myLootInventory == null && stored != null) {
+            // Instances saved before rolls were kept are rolled again
+            DefaultedList<ItemStack> roll = MyLootInventory.readRoll(stored);
+            if (roll == null && MyLootInventory.hasOwnRoll(stored)) {
+                roll = rollForPlayer(playerId, myLootContainerBlockEntity);
+            }
+            myLootInventory = MyLootInventory.readDelta(stored, roll != null ? roll : defaultList, myLootContainerBlockEntity);
             this.inventories.put(playerId, myLootInventory);
-        } else {
-            myLootInventory = this.inventories.get(playerId);
         }
+
+        if (myLootInventory == null) {
+            if (this.playersEvicted.remove(playerId)) {
+                // There's no telling what the player left in it, so don't hand out the default loot again
+                myLootInventory = new MyLootInventory(defaultList, DefaultedList.ofSize(27, ItemStack.EMPTY), myLootContainerBlockEntity);
+            } else {
+                // Copy-on-write, the default loot is only cloned if the player actually accesses it
+                DefaultedList<ItemStack> roll = null;
+                if (ModConfig.get().perPlayerLootRolls) {
+                    roll = preparedRoll != null ? preparedRoll : rollForPlayer(playerId, myLootContainerBlockEntity);
+                }
+                myLootInventory = roll != null ? MyLootInventory.ofOwnRoll(roll, myLootContainerBlockEntity)
+                        : new MyLootInventory(defaultList, myLootContainerBlockEntity);
+            }
+            this.inventories.put(playerId, myLootInventory);
+            this.dirty = true;
+            changed = true;
+            MyLootMetrics.INSTANCES_CREATED.increment();
+        } else if (stored != null && this.external) {
+            // Loaded from external storage, so it wasn't in the snapshot yet
+            changed = true;
+        }
+        if (changed) {
+            publish();
+        }
+        myLootInventory.touch(now);
         return myLootInventory;
     }
 
-    public void readNbt(NbtCompound nbt, MyLootContainerBlockEntity myLootContainerBlockEntity) {
+    /**
+     * Rolls the container's loot table for a single player, seeded from the container's seed and the player's UUID.
+     * Only rolled once per instance, the roll is saved with it.  Luck and the player aren't part of the loot context,
+     * as they'd make the roll differ.
+     *
+     * @return null if the loot table isn't known or the container isn't in a server world
+     */
+    @Nullable
+    private DefaultedList<ItemStack> rollForPlayer(UUID playerId, MyLootContainerBlockEntity myLootContainerBlockEntity) {
+        if (this.lootTableId == null || !(myLootContainerBlockEntity instanceof BlockEntity blockEntity)
+                || !(blockEntity.getWorld() instanceof ServerWorld serverWorld)) {
+            return null;
+        }
+
+        long seed = HashCommon.mix(this.lootTableSeed ^ HashCommon.mix(playerId.getMostSignificantBits() ^ HashCommon.mix(playerId.getLeastSignificantBits())));
+        LootContext lootContext = new LootContext.Builder(serverWorld)
+                .parameter(LootContextParameters.ORIGIN, Vec3d.ofCenter(blockEntity.getPos()))
+                .random(seed)
+                .build(LootContextTypes.CHEST);
+        SimpleInventory inventory = new SimpleInventory(27);
+        serverWorld.getServer().getLootManager().getTable(this.lootTableId).supplyInventory(inventory, lootContext);
+        DefaultedList<ItemStack> roll = DefaultedList.ofSize(27, ItemStack.EMPTY);
+        for (int i = 0; i < roll.size(); ++i) {
+            roll.set(i, inventory.getStack(i));
+        }
+        MyLootMetrics.PLAYER_ROLLS.increment();
+        return roll;
+    }
+
+    public void readNbt(NbtCompound nbt, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
+        long start = System.nanoTime();
         this.inventories.clear();
+        this.pendingInstances.clear();
         this.playersOpened.clear();
+        this.playersEvicted.clear();
+        this.preparedLoot.clear();
+        this.rolledEarly = false;
         NbtCompound root = nbt.getCompound(NBT_KEY);
+        // Anything read in an older format is re-encoded on the next save
+        this.cachedRoot = root;
+        this.dirty = root.getInt("version") != NBT_VERSION;
+        this.external = root.getBoolean("external");
+        if (root.contains("version", NbtElement.INT_TYPE)) {
+            readVersionedNbt(root, defaultList, myLootContainerBlockEntity);
+        } else {
+            readLegacyNbt(root, defaultList, myLootContainerBlockEntity);
+        }
+        evictInstances();
+        publish();
+        MyLootMetrics.recordNbtTime(MyLootMetrics.READ_NBT_MICROS, start);
+        MyLootMetrics.recordNbtBytes(MyLootMetrics.READ_NBT_BYTES, root);
+    }
+
+    private void readVersionedNbt(NbtCompound root, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
+        // Inventories.  Current ones are only decoded when their player needs them, older ones are re-encoded on
+        // the next save anyway.
+        boolean delta = root.getInt("version") >= 3;
+        long now = System.currentTimeMillis();
+        NbtList instances = root.getList("instances", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < instances.size(); ++i) {
+            NbtCompound sub = instances.getCompound(i);
+            if (delta) {
+                // Instances saved before creation and access times were tracked start counting from now
+                if (!sub.contains("Created", NbtElement.LONG_TYPE)) {
+                    sub.putLong("Created", now);
+                }
+                if (!sub.contains("LastAccess", NbtElement.LONG_TYPE)) {
+                    sub.putLong("LastAccess", now);
+                }
+                this.pendingInstances.put(sub.getUuid("id"), sub);
+            } else {
+                this.inventories.put(sub.getUuid("id"), readInventory(sub, defaultList, myLootContainerBlockEntity));
+            }
+        }
+        // Players opened
+        NbtList playersOpened = root.getList("opened", NbtElement.INT_ARRAY_TYPE);
+        for (NbtElement playerId : playersOpened) {
+            this.playersOpened.add(NbtHelper.toUuid(playerId));
+        }
+        for (NbtElement playerId : root.getList("evicted", NbtElement.INT_ARRAY_TYPE)) {
+            this.playersEvicted.add(NbtHelper.toUuid(playerId));
+        }
+        // Loot table
+        if (root.contains("lootTable", NbtElement.STRING_TYPE)) {
+            this.lootTableId = Identifier.tryParse(root.getString("lootTable"));
+            this.lootTableSeed = root.getLong("lootTableSeed");
+        }
+    }
+
+    /**
+     * Reads the original format, which keyed everything by the String form of player UUIDs.  It is re-written in the
+     * current format on the next save.
+     */
+    private void readLegacyNbt(NbtCompound root, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
         // Inventories
         for (String playerId : root.getKeys()) {
-            NbtCompound sub = root.getCompound(playerId);
-            MyLootInventory inventory = new MyLootInventory(myLootContainerBlockEntity);
-            NbtList nbtList = sub.getList("Items", NbtElement.COMPOUND_TYPE);
-            for (int i = 0; i < nbtList.size(); ++i) {
-                NbtCompound nbtCompound = nbtList.getCompound(i);
-                int j = nbtCompound.getByte("Slot") & 0xFF;
-                if (j < 0 || j >= inventory.size()) continue;
-                inventory.setStack(j, ItemStack.fromNbt(nbtCompound));
+            if (root.contains(playerId, NbtElement.COMPOUND_TYPE)) {
+                this.inventories.put(UUID.fromString(playerId), readInventory(root.getCompound(playerId), defaultList, myLootContainerBlockEntity));
             }
-            this.inventories.put(playerId, inventory);
         }
         // Players opened
         NbtList playersOpened = root.getList("players", NbtElement.STRING_TYPE);
         for (int i = 0; i < playersOpened.size(); ++i) {
-            this.playersOpened.add(playersOpened.getString(i));
+            this.playersOpened.add(UUID.fromString(playersOpened.getString(i)));
         }
     }
 
-    public void writeNbt(NbtCompound nbt) {
-        NbtCompound root = new NbtCompound();
-        // Inventories
-        for (Map.Entry<String, MyLootInventory> entry : this.inventories.entrySet()) {
-            NbtCompound sub = new NbtCompound();
-            NbtList nbtList = new NbtList();
-            MyLootInventory inventory = entry.getValue();
-            for (int i = 0; i < inventory.size(); ++i) {
-                ItemStack stack = inventory.getStack(i);
-                if (stack.isEmpty()) continue;
-                NbtCompound nbtCompound = new NbtCompound();
-                nbtCompound.putByte("Slot", (byte)i);
-                stack.writeNbt(nbtCompound);
-                nbtList.add(nbtCompound);
-            }
-            sub.put("Items", nbtList);
-            root.put(entry.getKey(), sub);
+    /**
+     * Reads an instance written in full by version 2 or earlier.
+     */
+    private static MyLootInventory readInventory(NbtCompound sub, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
+        if (sub.getBoolean("Pristine")) {
+            return new MyLootInventory(defaultList, myLootContainerBlockEntity);
         }
-        // Players opened
-        NbtList playersOpenedList = new NbtList();
-        for (String player : this.playersOpened) {
-            playersOpenedList.add(NbtString.of(player));
+        
+        DefaultedList<ItemStack> items = DefaultedList.ofSize(27, ItemStack.EMPTY);
+        NbtList nbtList = sub.getList("Items", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < nbtList.size(); ++i) {
+            NbtCompound nbtCompound = nbtList.getCompound(i);
+            int j = nbtCompound.getByte("Slot") & 0xFF;
+            if (j < 0 || j >= items.size()) continue;
+            items.set(j, ItemStack.fromNbt(nbtCompound));
+        }
+        return new MyLootInventory(defaultList, items, myLootContainerBlockEntity);
+    }
+
+    public void writeNbt(NbtCompound nbt, DefaultedList<ItemStack> defaultList, MyLootContainerBlockEntity myLootContainerBlockEntity) {
+        long start = System.nanoTime();
+        int instancesEncoded = 0;
+        // Storage can only be switched with access to the world, otherwise keep writing wherever instances are now
+        if (myLootContainerBlockEntity instanceof BlockEntity blockEntity && blockEntity.getWorld() instanceof ServerWorld serverWorld) {
+            boolean external = ModConfig.get().externalInstanceStorage;
+            if (this.external && !external) {
+                loadExternalInstances(serverWorld, blockEntity.getPos());
+                ExternalLootStorage.removeContainer(serverWorld, blockEntity.getPos());
+                this.external = false;
+                this.dirty = true;
+            } else if (!this.external && external) {
+                // Push every instance to the external storage once, after that only changed ones
+                for (MyLootInventory inventory : this.inventories.values()) {
+                    inventory.invalidateNbt();
+                }
+                for (Map.Entry<UUID, NbtCompound> entry : this.pendingInstances.entrySet()) {
+                    ExternalLootStorage.write(serverWorld, blockEntity.getPos(), entry.getKey(), entry.getValue());
+                }
+                this.pendingInstances.clear();
+                this.external = true;
+                this.dirty = true;
+            }
+            
+            if (this.external) {
+                for (Map.Entry<UUID, MyLootInventory> entry : this.inventories.entrySet()) {
+                    if (entry.getValue().isDirty()) {
+                        instancesEncoded++;
+                        ExternalLootStorage.write(serverWorld, blockEntity.getPos(), entry.getKey(), entry.getValue().toNbt(entry.getKey()));
+                    }
+                }
+            }
+        }
+        
+        evictInstances();
+        boolean rebuilt = isDirty();
+        if (rebuilt) {
+            NbtCompound root = new NbtCompound();
+            root.putInt("version", NBT_VERSION);
+            // Inventories
+            if (this.external) {
+                root.putBoolean("external", true);
+            } else {
+                NbtList instances = new NbtList();
+                // Instances without changes aren't saved, the player gets the same loot from a new one.  Except their
+                // own roll, which wouldn't be the same if rolled again.
+                for (Map.Entry<UUID, MyLootInventory> entry : this.inventories.entrySet()) {
+                    MyLootInventory inventory = entry.getValue();
+                    if (inventory.matchesDefaults() && !inventory.isOwnRoll()) {
+                        continue;
+                    }
+                    if (inventory.isDirty()) {
+                        instancesEncoded++;
+                    }
+                    instances.add(inventory.toNbt(entry.getKey()));
+                }
+                for (NbtCompound pending : this.pendingInstances.values()) {
+                    if (MyLootInventory.needsSaving(pending)) {
+                        instances.add(pending);
+                    }
+                }
+                root.put("instances", instances);
+            }
+            // Players opened
+            NbtList playersOpenedList = new NbtList();
+            for (UUID player : this.playersOpened) {
+                playersOpenedList.add(NbtHelper.fromUuid(player));
+            }
+            root.put("opened", playersOpenedList);
+            if (!this.playersEvicted.isEmpty()) {
+                NbtList playersEvictedList = new NbtList();
+                for (UUID player : this.playersEvicted) {
+                    playersEvictedList.add(NbtHelper.fromUuid(player));
+                }
+                root.put("evicted", playersEvictedList);
+            }
+            // Loot table
+            if (this.lootTableId != null) {
+                root.putString("lootTable", this.lootTableId.toString());
+                root.putLong("lootTableSeed", this.lootTableSeed);
+            }
+            
+            this.cachedRoot = root;
+            this.dirty = false;
+            MyLootMetrics.recordNbtBytes(MyLootMetrics.WRITE_NBT_BYTES, root);
+        }
+        
+        int instances = this.inventories.size() + this.pendingInstances.size();
+        if (rebuilt || instancesEncoded > 0) {
+            MyLootMetrics.CONTAINERS_ENCODED.increment();
+        } else {
+            MyLootMetrics.CONTAINERS_REUSED.increment();
+        }
+        MyLootMetrics.INSTANCES_ENCODED.add(instancesEncoded);
+        MyLootMetrics.INSTANCES_REUSED.add(instances - instancesEncoded);
+        if (rebuilt || instancesEncoded > 0) {
+            publish();
+        }
+        nbt.put(NBT_KEY, this.cachedRoot);
+        MyLootMetrics.recordNbtTime(MyLootMetrics.WRITE_NBT_MICROS, start);
+    }
+
+    /**
+     * Resets a container's block entity NBT, so it can be done the same way for loaded and unloaded containers.  With
+     * a playerId only that player's instance and opened state are removed, otherwise every player's.  With reroll, the
+     * default loot is cleared and rolled again from the remembered loot table with a new seed the next time the
+     * container is opened.  Instances kept in ExternalLootStorage have to be removed separately.
+     *
+     * @return true if any player has still opened the container afterwards
+     */
+    public static boolean resetNbt(NbtCompound nbt, @Nullable UUID playerId, boolean reroll, Random random) {
+        // Copied, as a loaded container's NBT shares its compound with the published snapshot
+        NbtCompound root = nbt.getCompound(NBT_KEY).copy();
+        boolean legacy = !root.contains("version", NbtElement.INT_TYPE);
+        if (playerId == null) {
+            NbtCompound reset = new NbtCompound();
+            reset.putInt("version", NBT_VERSION);
+            reset.put("instances", new NbtList());
+            reset.put("opened", new NbtList());
+            if (root.contains("lootTable", NbtElement.STRING_TYPE)) {
+                reset.putString("lootTable", root.getString("lootTable"));
+                reset.putLong("lootTableSeed", root.getLong("lootTableSeed"));
+            }
+            root = reset;
+        } else if (legacy) {
+            root.remove(playerId.toString());
+            NbtList playersOpened = root.getList("players", NbtElement.STRING_TYPE);
+            playersOpened.removeIf(element -> element.asString().equals(playerId.toString()));
+        } else {
+            root.getList("instances", NbtElement.COMPOUND_TYPE).removeIf(element -> playerId.equals(((NbtCompound) element).getUuid("id")));
+            root.getList("opened", NbtElement.INT_ARRAY_TYPE).removeIf(element -> playerId.equals(NbtHelper.toUuid(element)));
+            root.getList("evicted", NbtElement.INT_ARRAY_TYPE).removeIf(element -> playerId.equals(NbtHelper.toUuid(element)));
+        }
+
+        Identifier lootTableId = root.contains("lootTable", NbtElement.STRING_TYPE) ? Identifier.tryParse(root.getString("lootTable")) : null;
+        if (reroll && lootTableId != null) {
+            long seed = random.nextLong();
+            nbt.remove("Items");
+            nbt.putString("LootTable", lootTableId.toString());
+            nbt.putLong("LootTableSeed", seed);
+            root.putLong("lootTableSeed", seed);
         }
-        root.put("players", playersOpenedList);
         nbt.put(NBT_KEY, root);
+        return legacy ? !root.getList("players", NbtElement.STRING_TYPE).isEmpty() : !root.getList("opened", NbtElement.INT_ARRAY_TYPE).isEmpty();
+    }
+
+    /**
+     * @return true if a container's block entity NBT has its instances in ExternalLootStorage
+     */
+    public static boolean hasExternalInstances(NbtCompound nbt) {
+        return nbt.getCompound(NBT_KEY).getBoolean("external");
+    }
+
+    /**
+     * Moves every instance of this container kept in ExternalLootStorage that isn't loaded yet back to this container,
+     * still undecoded.
+     */
+    private void loadExternalInstances(ServerWorld serverWorld, BlockPos pos) {
+        for (Map.Entry<UUID, NbtCompound> entry : ExternalLootStorage.readAll(serverWorld, pos).entrySet()) {
+            if (!this.inventories.containsKey(entry.getKey())) {
+                this.pendingInstances.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Called when the container is removed from the world.  Instances kept in ExternalLootStorage are moved back so
+     * the break handler can still drop them, and then deleted from the storage.
+     */
+    public void releaseExternalInstances(BlockEntity blockEntity) {
+        if (this.external && blockEntity.getWorld() instanceof ServerWorld serverWorld) {
+            loadExternalInstances(serverWorld, blockEntity.getPos());
+            ExternalLootStorage.removeContainer(serverWorld, blockEntity.getPos());
+            this.external = false;
+            this.dirty = true;
+            publish();
+        }
+    }
+
+    /**
+     * Evicts instances not opened for instanceExpiryDays, and the least recently opened ones above
+     * maxInstancesPerContainer.  Runs as containers are loaded and saved.  The players stay opened, and only those who
+     * changed their instance need to be remembered.  Instances in ExternalLootStorage are out of the chunk already and
+     * aren't evicted.
+     */
+    private void evictInstances() {
+        ModConfig config = ModConfig.get();
+        int count = this.inventories.size() + this.pendingInstances.size();
+        int maxInstances = config.maxInstancesPerContainer;
+        if (this.external || count == 0 || (config.instanceExpiryDays <= 0 && (maxInstances <= 0 || count <= maxInstances))) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiry = config.instanceExpiryDays > 0 ? now - TimeUnit.DAYS.toMillis(config.instanceExpiryDays) : Long.MIN_VALUE;
+        List<Map.Entry<UUID, Long>> lastAccess = new ArrayList<>(count);
+        for (Map.Entry<UUID, MyLootInventory> entry : this.inventories.entrySet()) {
+            lastAccess.add(Map.entry(entry.getKey(), entry.getValue().getLastAccess()));
+        }
+        for (Map.Entry<UUID, NbtCompound> entry : this.pendingInstances.entrySet()) {
+            lastAccess.add(Map.entry(entry.getKey(), MyLootInventory.getLastAccess(entry.getValue(), now)));
+        }
+        lastAccess.sort(Map.Entry.comparingByValue());
+
+        int overLimit = maxInstances > 0 ? count - maxInstances : 0;
+        for (int i = 0; i < lastAccess.size(); ++i) {
+            Map.Entry<UUID, Long> entry = lastAccess.get(i);
+            if (i >= overLimit && entry.getValue() >= expiry) {
+                break;
+            }
+            UUID playerId = entry.getKey();
+            MyLootInventory inventory = this.inventories.remove(playerId);
+            NbtCompound pending = this.pendingInstances.remove(playerId);
+            if (inventory != null ? !inventory.matchesDefaults() : pending != null && MyLootInventory.hasChanges(pending)) {
+                this.playersEvicted.add(playerId);
+            }
+            this.dirty = true;
+            MyLootMetrics.INSTANCES_EVICTED.increment();
+        }
+    }
+
+    private boolean isDirty() {
+        if (this.dirty || this.cachedRoot == null) {
+            return true;
+        }
+        for (MyLootInventory inventory : this.inventories.values()) {
+            if (inventory.isDirty()) {
+                return true;
+            }
+        }
+        return false;
     }
     
     public void clear() {
+        this.dirty = true;
         this.inventories.clear();
+        this.pendingInstances.clear();
+        publish();
+    }
+
+    /**
+     * Drops a loaded container's in-memory state after {@link #resetNbt}.  A reroll leaves the block entity waiting for
+     * its loot table, so readNbt doesn't reach myLoot's state and it has to be cleared here.
+     *
+     * @param playerId only that player's instance and opened state, or null for every player's
+     */
+    public void resetInstances(@Nullable UUID playerId) {
+        if (playerId == null) {
+            this.inventories.clear();
+            this.pendingInstances.clear();
+            this.playersOpened.clear();
+            this.playersEvicted.clear();
+            this.preparedLoot.clear();
+            this.rolledEarly = false;
+        } else {
+            this.inventories.remove(playerId);
+            this.pendingInstances.remove(playerId);
+            this.playersOpened.remove(playerId);
+            this.playersEvicted.remove(playerId);
+            this.preparedLoot.remove(playerId);
+        }
+        this.cachedRoot = null;
+        this.dirty = true;
+        publish();
     }
 
     public void onOpen(PlayerEntity player, BlockEntity blockEntity) {
@@ -132,13 +717,17 @@ public class MyLootContainerBlockEntityCommon {
                 this.stateManager.openContainer(player, world, pos, cachedState);
             }
 
-            String playerId = player.getGameProfile().getId().toString();
-            if (!this.playersOpened.contains(playerId)) {
-                this.playersOpened.add(playerId);
+            boolean firstOpen = this.playersOpened.isEmpty();
+            if (this.playersOpened.add(player.getUuid())) {
+                this.dirty = true;
+                publish();
                 blockEntity.markDirty();
-                if (world != null) {
-                    // Force sync with clients
-                    world.updateListeners(pos, cachedState, cachedState, Block.NOTIFY_ALL);
+                if (firstOpen && world instanceof ServerWorld serverWorld) {
+                    MyLootContainerIndex.get(serverWorld).markOpened(pos);
+                }
+                if (player instanceof ServerPlayerEntity serverPlayer) {
+                    // Only the opening player needs to know, and their client re-renders the container itself
+                    MyLootNetworking.sendOpenedContainer(serverPlayer, pos);
                 }
             }
         }
@@ -155,4 +744,34 @@ public class MyLootContainerBlockEntityCommon {
             this.stateManager.updateViewerCount(blockEntity.getWorld(), blockEntity.getPos(), blockEntity.getCachedState());
         }
     }
+
+    /**
+     * A read-only copy of a container's instance state, see {@link #snapshot}.  The compounds are the ones written to
+     * the chunk or read from it, and must not be modified.
+     */
+    @Getter
+    public static final class InstanceSnapshot {
+        static final InstanceSnapshot EMPTY = new InstanceSnapshot(Set.of(), Set.of(), Set.of(), false, null, Map.of());
+
+        private final Set<UUID> playersOpened;
+        // Players with an instance, decoded or not.  Without those in external storage that haven't been loaded yet.
+        private final Set<UUID> playersWithInstances;
+        private final Set<UUID> playersEvicted;
+        private final boolean external;
+        // The myLoot compound last saved or read, null if there's none yet
+        @Nullable
+        private final NbtCompound root;
+        // Each instance as last encoded or read.  Instances created since the last save aren't in it yet.
+        private final Map<UUID, NbtCompound> encodedInstances;
+
+        private InstanceSnapshot(Set<UUID> playersOpened, Set<UUID> playersWithInstances, Set<UUID> playersEvicted, boolean external,
+                                 @Nullable NbtCompound root, Map<UUID, NbtCompound> encodedInstances) {
+            this.playersOpened = playersOpened;
+            this.playersWithInstances = playersWithInstances;
+            this.playersEvicted = playersEvicted;
+            this.external = external;
+            this.root = root;
+            this.encodedInstances = encodedInstances;
+        }
+    }
 }
@@ -6,6 +6,7 @@ import net.fabricmc.api.EnvType;
 import net.fabricmc.api.Environment;
 import org.spoorn.myloot.MyLoot;
 import org.spoorn.myloot.client.model.MyLootModelResourceProvider;
+import org.spoorn.myloot.client.network.MyLootClientNetworking;
 import org.spoorn.spoornpacks.client.render.SPTexturedRenderLayers;
 
 @Log4j2
@@ -21,5 +22,8 @@ public class MyLootClient implements ClientModInitializer {
         
         // Barrel custom model
         MyLootModelResourceProvider.init();
+
+        // Networking
+        MyLootClientNetworking.init();
     }
 }
@@ -1,22 +1,20 @@
 package org.spoorn.myloot.client.block;
 
-import com.google.common.collect.ImmutableList;
 import com.mojang.datafixers.util.Pair;
 import net.fabricmc.fabric.api.renderer.v1.Renderer;
 import net.fabricmc.fabric.api.renderer.v1.RendererAccess;
 import net.fabricmc.fabric.api.renderer.v1.material.RenderMaterial;
+import net.fabricmc.fabric.api.renderer.v1.mesh.Mesh;
+import net.fabricmc.fabric.api.renderer.v1.mesh.MeshBuilder;
 import net.fabricmc.fabric.api.renderer.v1.mesh.QuadEmitter;
 import net.fabricmc.fabric.api.renderer.v1.model.FabricBakedModel;
 import net.fabricmc.fabric.api.renderer.v1.render.RenderContext;
 import net.minecraft.block.BlockState;
-import net.minecraft.block.entity.BlockEntity;
-import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.render.model.*;
 import net.minecraft.client.render.model.json.ModelOverrideList;
 import net.minecraft.client.render.model.json.ModelTransformation;
 import net.minecraft.client.texture.Sprite;
 import net.minecraft.client.util.SpriteIdentifier;
-import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
@@ -33,6 +31,9 @@ import java.util.function.Supplier;
  * Dynamic Barrel model that changes barrel model if player has opened myLoot barrel.
  */
 public class BarrelDynamicModel implements UnbakedModel {
+
+    // Culled faces, then unculled quads
+    private static final Direction[] CULL_FACES = {Direction.DOWN, Direction.UP, Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST, null};
     
     private final UnbakedModel unopened;
     private final UnbakedModel opened;
@@ -65,23 +66,56 @@ public class BarrelDynamicModel implements UnbakedModel {
     @Nullable
     @Override
     public BakedModel bake(ModelLoader loader, Function<SpriteIdentifier, Sprite> textureGetter, ModelBakeSettings rotationContainer, Identifier modelId) {
-        return new BarrelBakedModel(
-                bakedModel(this.unopened, loader, textureGetter, rotationContainer, modelId),
-                bakedModel(this.opened, loader, textureGetter, rotationContainer, modelId));
+        BakedModel unopened = bakedModel(this.unopened, loader, textureGetter, rotationContainer, modelId);
+        BakedModel opened = bakedModel(this.opened, loader, textureGetter, rotationContainer, modelId);
+        return new BarrelBakedModel(unopened, opened, buildMesh(unopened), buildMesh(opened));
     }
     
     private BakedModel bakedModel(UnbakedModel unbakedModel, ModelLoader loader, Function<SpriteIdentifier, Sprite> textureGetter, ModelBakeSettings rotationContainer, Identifier modelId) {
         return unbakedModel.bake(loader, textureGetter, rotationContainer, modelId);
     }
+
+    /**
+     * Converts a baked model's quads to a Mesh once, so they don't have to be converted on every chunk rebuild.
+     * Barrel quads don't depend on the block state or random, so the same mesh is used for every barrel.
+     *
+     * @return null if there is no renderer, in which case the baked model is rendered as is
+     */
+    @Nullable
+    private static Mesh buildMesh(@Nullable BakedModel model) {
+        Renderer renderer = RendererAccess.INSTANCE.getRenderer();
+        if (renderer == null || model == null) {
+            return null;
+        }
+
+        RenderMaterial material = renderer.materialById(RenderMaterial.MATERIAL_STANDARD);
+        MeshBuilder builder = renderer.meshBuilder();
+        QuadEmitter emitter = builder.getEmitter();
+        Random random = new Random(42L);
+        for (Direction dir : CULL_FACES) {
+            random.setSeed(42L);
+            for (BakedQuad quad : model.getQuads(null, dir, random)) {
+                emitter.fromVanilla(quad, material, dir);
+                emitter.emit();
+            }
+        }
+        return builder.build();
+    }
     
     private static final class BarrelBakedModel implements BakedModel, FabricBakedModel {
 
         private final BakedModel unopened;
         private final BakedModel opened;
+        @Nullable
+        private final Mesh unopenedMesh;
+        @Nullable
+        private final Mesh openedMesh;
         
-        BarrelBakedModel(BakedModel unopened, BakedModel opened) {
+        BarrelBakedModel(BakedModel unopened, BakedModel opened, @Nullable Mesh unopenedMesh, @Nullable Mesh openedMesh) {
             this.unopened = unopened;
             this.opened = opened;
+            this.unopenedMesh = unopenedMesh;
+            this.openedMesh = openedMesh;
         }
 
         @Override
@@ -91,25 +125,12 @@ public class BarrelDynamicModel implements UnbakedModel {
 
         @Override
         public void emitBlockQuads(BlockRenderView blockView, BlockState state, BlockPos pos, Supplier<Random> randomSupplier, RenderContext context) {
-            BlockEntity be = blockView.getBlockEntity(pos);
-            BakedModel model = this.unopened;
-            if (be instanceof MyLootBarrelBlockEntity myLootBarrelBlockEntity) {
-                PlayerEntity player = MinecraftClient.getInstance().player;
-                if (player != null && myLootBarrelBlockEntity.hasPlayerOpened(player)) {
-                    model = this.opened;
-                }
-            }
-            
-            QuadEmitter emitter = context.getEmitter();
-            Renderer renderer = RendererAccess.INSTANCE.getRenderer();
-            if (renderer != null) {
-                RenderMaterial material = renderer.materialById(RenderMaterial.MATERIAL_STANDARD);
-                for (Direction dir : Direction.values()) {
-                    for (BakedQuad quad : model.getQuads(state, dir, randomSupplier.get())) {
-                        emitter.fromVanilla(quad, material, dir);
-                        emitter.emit();
-                    }
-                }
+            boolean opened = blockView.getBlockEntity(pos) instanceof MyLootBarrelBlockEntity myLootBarrelBlockEntity && myLootBarrelBlockEntity.isOpenedOnClient();
+            Mesh mesh = opened ? this.openedMesh : this.unopenedMesh;
+            if (mesh != null) {
+                context.meshConsumer().accept(mesh);
+            } else {
+                context.fallbackConsumer().accept(opened ? this.opened : this.unopened);
             }
         }
 
@@ -120,11 +141,7 @@ public class BarrelDynamicModel implements UnbakedModel {
 
         @Override
         public List<BakedQuad> getQuads(@Nullable BlockState state, @Nullable Direction face, Random random) {
-            BakedModel model = this.unopened;
-            
-            ImmutableList.Builder<BakedQuad> builder = ImmutableList.builder();
-            builder.addAll(model.getQuads(state, face, random));
-            return builder.build();
+            return this.unopened.getQuads(state, face, random);
         }
 
         @Override
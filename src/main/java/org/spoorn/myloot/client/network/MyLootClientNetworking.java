@@ -0,0 +1,63 @@
+package org.spoorn.myloot.client.network;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.spoorn.myloot.block.entity.MyLootBarrelBlockEntity;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.network.MyLootNetworking;
+
+@Environment(EnvType.CLIENT)
+public final class MyLootClientNetworking {
+
+    public static void init() {
+        ClientPlayNetworking.registerGlobalReceiver(MyLootNetworking.OPENED_CONTAINERS_ID,
+                (client, handler, buf, responseSender) -> receive(client, buf, true));
+        ClientPlayNetworking.registerGlobalReceiver(MyLootNetworking.RESET_CONTAINERS_ID,
+                (client, handler, buf, responseSender) -> receive(client, buf, false));
+    }
+
+    private static void receive(MinecraftClient client, PacketByteBuf buf, boolean opened) {
+        int size = buf.readVarInt();
+        long[] positions = new long[size];
+        for (int i = 0; i < size; ++i) {
+            positions[i] = buf.readLong();
+        }
+
+        client.execute(() -> {
+            ClientWorld world = client.world;
+            if (world == null) {
+                return;
+            }
+
+            // Chests are drawn by their block entity renderer every frame, but barrels are part of the chunk mesh
+            // and need their section rebuilt.  Only this client does so, other players see no change.
+            LongSet sections = null;
+            for (long packedPos : positions) {
+                BlockPos pos = BlockPos.fromLong(packedPos);
+                if (world.getBlockEntity(pos) instanceof MyLootContainerBlockEntity myLootContainerBlockEntity && myLootContainerBlockEntity.isOpenedOnClient() != opened) {
+                    myLootContainerBlockEntity.setOpenedOnClient(opened);
+                    if (myLootContainerBlockEntity instanceof MyLootBarrelBlockEntity) {
+                        if (sections == null) {
+                            sections = new LongOpenHashSet();
+                        }
+                        sections.add(ChunkSectionPos.from(pos).asLong());
+                    }
+                }
+            }
+
+            if (sections != null) {
+                for (long section : sections) {
+                    world.scheduleBlockRenders(ChunkSectionPos.unpackX(section), ChunkSectionPos.unpackY(section), ChunkSectionPos.unpackZ(section));
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,114 @@
+package org.spoorn.myloot.command;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.fabricmc.fabric.api.command.v1.CommandRegistrationCallback;
+import net.minecraft.command.argument.GameProfileArgumentType;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.LiteralText;
+import net.minecraft.util.math.BlockPos;
+import org.jetbrains.annotations.Nullable;
+import org.spoorn.myloot.MyLoot;
+import org.spoorn.myloot.core.LootResetJob;
+import org.spoorn.myloot.metrics.MyLootMetrics;
+import org.spoorn.myloot.storage.MyLootContainerIndex;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * /myloot commands for server operators.
+ */
+public final class MyLootCommands {
+
+    // Max positions listed by container queries
+    private static final int MAX_LISTED = 10;
+
+    public static void init() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, dedicated) -> dispatcher.register(
+                CommandManager.literal(MyLoot.MODID)
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .then(CommandManager.literal("stats").executes(context -> {
+                            for (String line : MyLootMetrics.summary()) {
+                                context.getSource().sendFeedback(new LiteralText(line), false);
+                            }
+                            return 1;
+                        }))
+                        .then(CommandManager.literal("containers")
+                                .executes(context -> {
+                                    MyLootContainerIndex index = MyLootContainerIndex.get(context.getSource().getWorld());
+                                    context.getSource().sendFeedback(new LiteralText(index.size() + " myLoot containers in this world, "
+                                            + index.openedCount() + " opened by at least one player"), false);
+                                    return index.size();
+                                })
+                                .then(CommandManager.literal("near")
+                                        .then(CommandManager.argument("radius", IntegerArgumentType.integer(1)).executes(context -> {
+                                            BlockPos center = new BlockPos(context.getSource().getPosition());
+                                            int radius = IntegerArgumentType.getInteger(context, "radius");
+                                            LongArrayList positions = new LongArrayList();
+                                            MyLootContainerIndex.get(context.getSource().getWorld()).forEachWithin(center, radius, positions::add);
+                                            return list(context, positions, "within " + radius + " blocks");
+                                        })))
+                                .then(CommandManager.literal("unopened").executes(context -> {
+                                    LongArrayList positions = new LongArrayList();
+                                    MyLootContainerIndex.get(context.getSource().getWorld()).forEachNeverOpened(positions::add);
+                                    return list(context, positions, "never opened");
+                                })))
+                        .then(CommandManager.literal("reset")
+                                .then(CommandManager.literal("all")
+                                        .executes(context -> startReset(context, null, false))
+                                        .then(CommandManager.literal("reroll").executes(context -> startReset(context, null, true))))
+                                .then(CommandManager.literal("player")
+                                        .then(CommandManager.argument("player", GameProfileArgumentType.gameProfile()).executes(context -> {
+                                            Collection<GameProfile> profiles = GameProfileArgumentType.getProfileArgument(context, "player");
+                                            if (profiles.size() != 1) {
+                                                context.getSource().sendError(new LiteralText("Select exactly one player to reset"));
+                                                return 0;
+                                            }
+                                            return startReset(context, profiles.iterator().next().getId(), false);
+                                        })))
+                                .then(CommandManager.literal("status").executes(context -> {
+                                    LootResetJob job = LootResetJob.get(context.getSource().getServer());
+                                    context.getSource().sendFeedback(new LiteralText(job.status()), false);
+                                    return job.isRunning() ? 1 : 0;
+                                }))
+                                .then(CommandManager.literal("cancel").executes(context -> {
+                                    LootResetJob job = LootResetJob.get(context.getSource().getServer());
+                                    if (!job.isRunning()) {
+                                        context.getSource().sendError(new LiteralText("No myLoot reset running"));
+                                        return 0;
+                                    }
+                                    job.cancel();
+                                    context.getSource().sendFeedback(new LiteralText("Cancelled myLoot reset, containers already reset stay reset"), true);
+                                    return 1;
+                                })))));
+    }
+
+    private static int startReset(CommandContext<ServerCommandSource> context, @Nullable UUID playerId, boolean reroll) {
+        ServerCommandSource source = context.getSource();
+        LootResetJob job = LootResetJob.get(source.getServer());
+        if (job.isRunning()) {
+            source.sendError(new LiteralText("A myLoot reset is already running: " + job.status()));
+            return 0;
+        }
+        job.start(source.getServer(), playerId, reroll);
+        source.sendFeedback(new LiteralText("Started myLoot reset, see /myloot reset status"), true);
+        return 1;
+    }
+
+    private static int list(CommandContext<ServerCommandSource> context, LongArrayList positions, String description) {
+        ServerCommandSource source = context.getSource();
+        source.sendFeedback(new LiteralText(positions.size() + " myLoot containers " + description), false);
+        for (int i = 0; i < Math.min(positions.size(), MAX_LISTED); ++i) {
+            BlockPos pos = BlockPos.fromLong(positions.getLong(i));
+            source.sendFeedback(new LiteralText("  " + pos.getX() + " " + pos.getY() + " " + pos.getZ()), false);
+        }
+        if (positions.size() > MAX_LISTED) {
+            source.sendFeedback(new LiteralText("  ... and " + (positions.size() - MAX_LISTED) + " more"), false);
+        }
+        return positions.size();
+    }
+}
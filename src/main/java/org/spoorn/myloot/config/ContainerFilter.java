@@ -0,0 +1,83 @@
+package org.spoorn.myloot.config;
+
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.block.Block;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Which loot containers become myLoot containers, compiled once from the allow and deny lists in {@link ModConfig}.
+ * Checked for every loot container seen, so each check is only a few hash lookups.
+ */
+@Log4j2
+public final class ContainerFilter {
+
+    private final IdFilter lootTables;
+    private final IdFilter dimensions;
+    private final IdFilter containers;
+
+    ContainerFilter(ModConfig config) {
+        this.lootTables = new IdFilter("loot table", config.lootTableAllowList, config.lootTableDenyList);
+        this.dimensions = new IdFilter("dimension", config.dimensionAllowList, config.dimensionDenyList);
+        this.containers = new IdFilter("container", config.containerAllowList, config.containerDenyList);
+    }
+
+    /**
+     * @param block the vanilla container block, e.g. a chest, trapped chest or barrel
+     * @return true if a loot container with this loot table in this world should become a myLoot container
+     */
+    public boolean shouldReplace(RegistryKey<World> world, Block block, Identifier lootTableId) {
+        return this.lootTables.test(lootTableId) && this.dimensions.test(world.getValue())
+                && this.containers.test(Registry.BLOCK.getId(block));
+    }
+
+    /**
+     * An allow and deny list of ids.  Entries are full ids, or "namespace:*" for every id in a namespace.  An empty
+     * allow list allows everything, and the deny list wins over the allow list.
+     */
+    private static final class IdFilter {
+
+        private final Set<Identifier> allowedIds = new HashSet<>();
+        private final Set<String> allowedNamespaces = new HashSet<>();
+        private final Set<Identifier> deniedIds = new HashSet<>();
+        private final Set<String> deniedNamespaces = new HashSet<>();
+        private final boolean allowAll;
+
+        private IdFilter(String kind, List<String> allowList, List<String> denyList) {
+            compile(kind, allowList, this.allowedIds, this.allowedNamespaces);
+            compile(kind, denyList, this.deniedIds, this.deniedNamespaces);
+            this.allowAll = this.allowedIds.isEmpty() && this.allowedNamespaces.isEmpty();
+        }
+
+        private static void compile(String kind, List<String> entries, Set<Identifier> ids, Set<String> namespaces) {
+            if (entries == null) {
+                return;
+            }
+            for (String entry : entries) {
+                if (entry.endsWith(":*")) {
+                    namespaces.add(entry.substring(0, entry.length() - 2));
+                    continue;
+                }
+                Identifier id = Identifier.tryParse(entry);
+                if (id == null) {
+                    log.warn("Ignoring invalid {} id '{}' in the myLoot config", kind, entry);
+                } else {
+                    ids.add(id);
+                }
+            }
+        }
+
+        private boolean test(Identifier id) {
+            if (this.deniedIds.contains(id) || this.deniedNamespaces.contains(id.getNamespace())) {
+                return false;
+            }
+            return this.allowAll || this.allowedIds.contains(id) || this.allowedNamespaces.contains(id.getNamespace());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.spoorn.myloot.config;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import lombok.extern.log4j.Log4j2;
+import net.fabricmc.loader.api.FabricLoader;
+import org.spoorn.myloot.MyLoot;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * myLoot config, read from config/myloot.json.  Missing fields keep their defaults and the file is re-written on
+ * startup so new options show up for server owners.
+ */
+@Log4j2
+public class ModConfig {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static ModConfig INSTANCE = new ModConfig();
+
+    // Not part of the file, compiled from it on first use
+    private transient volatile ContainerFilter containerFilter;
+
+    // Which loot containers become myLoot containers, the others are left as vanilla containers.  Entries are ids,
+    // e.g. "minecraft:chests/simple_dungeon", or "namespace:*" for a whole namespace.  An empty allow list allows
+    // everything, and deny lists win over allow lists.  Applies to containers generated or loaded from now on.
+    public List<String> lootTableAllowList = new ArrayList<>();
+    public List<String> lootTableDenyList = new ArrayList<>();
+    // Dimension ids, e.g. "minecraft:the_nether"
+    public List<String> dimensionAllowList = new ArrayList<>();
+    public List<String> dimensionDenyList = new ArrayList<>();
+    // Container block ids, "minecraft:chest", "minecraft:trapped_chest" or "minecraft:barrel"
+    public List<String> containerAllowList = new ArrayList<>();
+    public List<String> containerDenyList = new ArrayList<>();
+
+    // Max number of loot containers replaced with myLoot containers per server tick.  The rest carry over.
+    public int maxReplacementsPerTick = 64;
+
+    // Max milliseconds per server tick spent replacing loot containers.  The rest carry over.
+    public double maxReplacementMillisPerTick = 5.0;
+
+    // How often, in ticks, to log myLoot stats and write the metrics file.  0 to disable.  Stats are also shown by
+    // /myloot stats.
+    public int statsLogIntervalTicks = 6000;
+
+    // File to write metrics to in the Prometheus text format, relative to the server directory.  Empty to disable.
+    public String prometheusFile = "";
+
+    // Also measure the size of containers' myLoot NBT.  This serializes it a second time when read or re-encoded.
+    public boolean measureNbtBytes = false;
+
+    // Place myLoot containers directly in the proto chunk during structure generation, instead of replacing vanilla
+    // containers on a later tick.  Containers from structure templates (e.g. villages) still go through the tick.
+    public boolean replaceDuringWorldGeneration = false;
+
+    // Keep players' instanced loot in per-region files under the dimension's myloot/ folder instead of in the chunk.
+    // Instances are loaded when first needed.  Turning this off moves them back into the chunk as containers save.
+    public boolean externalInstanceStorage = false;
+
+    // Roll each player's loot separately from the container's loot table, seeded by the player's UUID, instead of
+    // giving everyone a copy of the same roll.  Each player's roll is saved with their instance.  Applies to
+    // instances created from now on, in containers rolled since myLoot started remembering their loot table.
+    public boolean perPlayerLootRolls = false;
+
+    // Minutes after which a player gets fresh loot when they open a container again, counted from when their instance
+    // was created.  0 to never refresh.
+    public int lootRefreshMinutes = 0;
+
+    // Days after which a player's instance of a container is evicted if they haven't opened it since.  0 to keep
+    // instances forever.  Players who had taken loot find the container empty afterwards, others get the default loot.
+    public int instanceExpiryDays = 0;
+
+    // Max number of instances kept per container, the least recently opened ones are evicted first.  0 for no limit.
+    public int maxInstancesPerContainer = 0;
+
+    // Players within this many blocks of a myLoot container they have no loot in yet get their loot prepared ahead of
+    // time, so opening it for the first time doesn't have to.  Loot tables are rolled on the server thread, copies
+    // are made on a background thread.  0 to disable.
+    public int prepareInstancesRange = 0;
+
+    // Max milliseconds per server tick spent preparing instances for prepareInstancesRange.  The rest are prepared on
+    // the next ticks.
+    public double maxPreparationMillisPerTick = 2.0;
+
+    // Put a player's loot straight into their inventory when they break a myLoot container, then their ender chest,
+    // instead of dropping it.  Only what fits in neither is dropped.
+    public boolean deliverBrokenContainerLoot = false;
+
+    // Max number of chunks a /myloot reset processes per server tick.  Unloaded chunks are edited in their region files.
+    public int resetChunksPerTick = 4;
+
+    public static ModConfig get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the allow and deny lists compiled into lookups
+     */
+    public ContainerFilter getContainerFilter() {
+        if (this.containerFilter == null) {
+            this.containerFilter = new ContainerFilter(this);
+        }
+        return this.containerFilter;
+    }
+
+    public static void init() {
+        Path path = FabricLoader.getInstance().getConfigDir().resolve(MyLoot.MODID + ".json");
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                ModConfig config = GSON.fromJson(reader, ModConfig.class);
+                if (config != null) {
+                    INSTANCE = config;
+                }
+            } catch (IOException | JsonParseException e) {
+                log.error("Could not read myLoot config at " + path + ", using defaults", e);
+                return;
+            }
+        }
+
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            GSON.toJson(INSTANCE, writer);
+        } catch (IOException e) {
+            log.error("Could not write myLoot config to " + path, e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.spoorn.myloot.core;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.item.ItemStack;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.collection.DefaultedList;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.jetbrains.annotations.Nullable;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.block.entity.MyLootInventory;
+import org.spoorn.myloot.config.ModConfig;
+import org.spoorn.myloot.storage.MyLootContainerIndex;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares players' instances of myLoot containers they come close to, so opening a container for the first time
+ * only has to hand over what was prepared.  Enabled by prepareInstancesRange.
+ *
+ * Containers near players are found through {@link MyLootContainerIndex} every few ticks, and prepared on the
+ * following ticks within maxPreparationMillisPerTick.  Preparing rolls the container's loot table if it hasn't been
+ * yet, and the player's own roll if perPlayerLootRolls is enabled.  Rolling loot tables can touch the world, e.g.
+ * exploration maps locating structures, so rolls stay on the server thread.  Only copying the loot into the player's
+ * instance is done on worker threads.
+ */
+public final class InstancePreparer {
+
+    private static final int INTERVAL_TICKS = 10;
+    // Prepared loot not picked up within this many ticks is dropped
+    private static final int EXPIRY_TICKS = 200;
+    private static final int THREADS = 2;
+
+    // Containers found near players by the last scan and not prepared yet, only touched from the server thread
+    private static final Queue<Candidate> CANDIDATES = new ArrayDeque<>();
+    @Nullable
+    private static ExecutorService executor;
+
+    public static void init() {
+        ServerTickEvents.END_SERVER_TICK.register(InstancePreparer::tick);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> shutdown());
+    }
+
+    private static void tick(MinecraftServer server) {
+        ModConfig config = ModConfig.get();
+        int range = config.prepareInstancesRange;
+        if (range <= 0) {
+            CANDIDATES.clear();
+            return;
+        }
+        // Each scan finds everything still in range, so whatever the last one didn't get to is dropped
+        if (server.getTicks() % INTERVAL_TICKS == 0) {
+            CANDIDATES.clear();
+            scan(server, range);
+        }
+
+        long deadline = System.nanoTime() + (long) (config.maxPreparationMillisPerTick * 1_000_000);
+        Candidate candidate;
+        while (System.nanoTime() < deadline && (candidate = CANDIDATES.poll()) != null) {
+            BlockPos pos = BlockPos.fromLong(candidate.pos());
+            ServerWorld world = candidate.world();
+            if (world.isChunkLoaded(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()))
+                    && world.getBlockEntity(pos) instanceof MyLootContainerBlockEntity myLootContainerBlockEntity) {
+                myLootContainerBlockEntity.prepareInstance(candidate.playerId(), world.getTime());
+            }
+        }
+    }
+
+    private static void scan(MinecraftServer server, int range) {
+        for (ServerWorld world : server.getWorlds()) {
+            if (world.getPlayers().isEmpty()) {
+                continue;
+            }
+            MyLootContainerIndex index = MyLootContainerIndex.get(world);
+            for (ServerPlayerEntity player : world.getPlayers()) {
+                if (player.isSpectator()) {
+                    continue;
+                }
+                BlockPos center = player.getBlockPos();
+                UUID playerId = player.getUuid();
+                index.forEachWithin(center, range, packedPos -> {
+                    if (Math.abs(BlockPos.unpackLongY(packedPos) - center.getY()) <= range) {
+                        CANDIDATES.add(new Candidate(world, packedPos, playerId));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Starts cloning defaultList on a worker thread.  Called on the server thread.
+     */
+    public static PreparedLoot prepare(DefaultedList<ItemStack> defaultList, long time) {
+        return prepare(defaultList, null, time);
+    }
+
+    /**
+     * Keeps a player's own roll, and starts cloning it on a worker thread.  Called on the server thread.
+     */
+    public static PreparedLoot prepareRoll(DefaultedList<ItemStack> roll, long time) {
+        return prepare(roll, roll, time);
+    }
+
+    private static PreparedLoot prepare(DefaultedList<ItemStack> loot, @Nullable DefaultedList<ItemStack> roll, long time) {
+        // The container's list may change while the copy is made, e.g. by a reset.  Cloning a snapshot and checking
+        // it on hand over keeps the copy consistent.
+        List<ItemStack> snapshot = List.copyOf(loot);
+        CompletableFuture<DefaultedList<ItemStack>> clone = CompletableFuture.supplyAsync(() -> MyLootInventory.cloneLoot(snapshot), executor());
+        return new PreparedLoot(roll, snapshot, clone, time + EXPIRY_TICKS);
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "myLoot Instance Preparer #" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private static synchronized void shutdown() {
+        CANDIDATES.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private record Candidate(ServerWorld world, long pos, UUID playerId) {
+    }
+
+    /**
+     * A player's instance prepared ahead of time: their own roll if they get one, and a copy of the loot their
+     * instance reads from.
+     */
+    public static final class PreparedLoot {
+
+        @Nullable
+        private final DefaultedList<ItemStack> roll;
+        private final List<ItemStack> snapshot;
+        private final CompletableFuture<DefaultedList<ItemStack>> clone;
+        private final long expiresAt;
+
+        private PreparedLoot(@Nullable DefaultedList<ItemStack> roll, List<ItemStack> snapshot,
+                             CompletableFuture<DefaultedList<ItemStack>> clone, long expiresAt) {
+            this.roll = roll;
+            this.snapshot = snapshot;
+            this.clone = clone;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isExpired(long time) {
+            return time >= this.expiresAt;
+        }
+
+        /**
+         * @return the player's own roll, see perPlayerLootRolls, or null if their instance reads from the container's
+         * loot
+         */
+        @Nullable
+        public DefaultedList<ItemStack> getRoll() {
+            return this.roll;
+        }
+
+        /**
+         * @return the stacks the copy was made from
+         */
+        public List<ItemStack> getSnapshot() {
+            return this.snapshot;
+        }
+
+        /**
+         * Never waits for the copy.
+         *
+         * @return the copy if it's done, otherwise null and the instance is cloned as usual
+         */
+        @Nullable
+        public DefaultedList<ItemStack> getClone() {
+            if (!this.clone.isDone() || this.clone.isCompletedExceptionally()) {
+                return null;
+            }
+            return this.clone.join();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.spoorn.myloot.core;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import lombok.extern.log4j.Log4j2;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.block.entity.BlockEntityType;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.PersistentState;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+import org.spoorn.myloot.MyLoot;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.block.entity.common.MyLootContainerBlockEntityCommon;
+import org.spoorn.myloot.config.ModConfig;
+import org.spoorn.myloot.entity.MyLootEntities;
+import org.spoorn.myloot.mixin.ThreadedAnvilChunkStorageAccessor;
+import org.spoorn.myloot.network.MyLootNetworking;
+import org.spoorn.myloot.storage.ExternalLootStorage;
+import org.spoorn.myloot.storage.MyLootContainerIndex;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Resets instanced loot of all myLoot containers, for every player or a single one, and optionally re-rolls their
+ * default loot.  Started by /myloot reset.
+ *
+ * The chunks to visit come from {@link MyLootContainerIndex} and are processed a few per server tick.  Loaded chunks
+ * are reset through their block entities, unloaded ones are edited directly in their region files without loading
+ * them into the world.  Chunks that are in the middle of loading or unloading are retried later.  The remaining
+ * chunks are saved with the overworld, so a reset carries on after a restart.
+ */
+@Log4j2
+public class LootResetJob extends PersistentState {
+
+    private static final String ID = MyLoot.MODID + "_reset";
+
+    // Player to reset, or null for everyone
+    @Nullable
+    private UUID playerId;
+    private boolean reroll;
+    // World id -> chunks left to process, processed from the end
+    private final Map<String, LongArrayList> remaining = new LinkedHashMap<>();
+    private int totalChunks;
+    private int processedChunks;
+    private int resetContainers;
+    private final Random random = new Random();
+
+    public static void init() {
+        ServerTickEvents.END_SERVER_TICK.register(server -> get(server).tick(server));
+    }
+
+    public static LootResetJob get(MinecraftServer server) {
+        return server.getOverworld().getPersistentStateManager().getOrCreate(LootResetJob::fromNbt, LootResetJob::new, ID);
+    }
+
+    public boolean isRunning() {
+        return !this.remaining.isEmpty();
+    }
+
+    public void start(MinecraftServer server, @Nullable UUID playerId, boolean reroll) {
+        this.playerId = playerId;
+        this.reroll = reroll;
+        this.remaining.clear();
+        this.totalChunks = 0;
+        this.processedChunks = 0;
+        this.resetContainers = 0;
+        for (ServerWorld world : server.getWorlds()) {
+            long[] chunks = MyLootContainerIndex.get(world).getChunks();
+            if (chunks.length > 0) {
+                // Descending, so chunks are popped from the end one region at a time
+                LongArrays.quickSort(chunks, (a, b) -> compareRegionOrder(b, a));
+                this.remaining.put(world.getRegistryKey().getValue().toString(), LongArrayList.wrap(chunks));
+                this.totalChunks += chunks.length;
+            }
+        }
+        markDirty();
+        log.info("Started myLoot reset of {} for {}, {} chunks", this.reroll ? "loot and instances" : "instances",
+                this.playerId == null ? "all players" : this.playerId, this.totalChunks);
+    }
+
+    public void cancel() {
+        this.remaining.clear();
+        markDirty();
+    }
+
+    public String status() {
+        if (!isRunning()) {
+            return "No myLoot reset running";
+        }
+        return String.format(Locale.ROOT, "Resetting %s for %s: %d/%d chunks, %d containers reset",
+                this.reroll ? "loot and instances" : "instances", this.playerId == null ? "all players" : this.playerId,
+                this.processedChunks, this.totalChunks, this.resetContainers);
+    }
+
+    private void tick(MinecraftServer server) {
+        if (!isRunning()) {
+            return;
+        }
+
+        int budget = ModConfig.get().resetChunksPerTick;
+        Iterator<Map.Entry<String, LongArrayList>> iterator = this.remaining.entrySet().iterator();
+        while (budget > 0 && iterator.hasNext()) {
+            Map.Entry<String, LongArrayList> entry = iterator.next();
+            Identifier worldId = Identifier.tryParse(entry.getKey());
+            ServerWorld world = worldId != null ? server.getWorld(RegistryKey.of(Registry.WORLD_KEY, worldId)) : null;
+            LongArrayList chunks = entry.getValue();
+            if (world == null) {
+                log.warn("Skipping myLoot reset of {} chunks in missing world {}", chunks.size(), entry.getKey());
+                iterator.remove();
+                continue;
+            }
+
+            int deferred = 0;
+            while (budget > 0 && chunks.size() > deferred) {
+                budget--;
+                long chunk = chunks.removeLong(chunks.size() - 1);
+                if (processChunk(world, chunk)) {
+                    this.processedChunks++;
+                } else {
+                    // Try again once the rest of this world is done
+                    chunks.add(0, chunk);
+                    deferred++;
+                }
+            }
+            if (chunks.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        markDirty();
+
+        if (!isRunning()) {
+            log.info("Finished myLoot reset, {} containers reset in {} chunks", this.resetContainers, this.processedChunks);
+        }
+    }
+
+    /**
+     * @return false if the chunk can't be processed right now
+     */
+    private boolean processChunk(ServerWorld world, long chunk) {
+        ChunkPos chunkPos = new ChunkPos(chunk);
+        WorldChunk worldChunk = world.getChunkManager().getWorldChunk(chunkPos.x, chunkPos.z);
+        if (worldChunk != null) {
+            resetLoadedChunk(world, worldChunk);
+            return true;
+        }
+
+        ThreadedAnvilChunkStorage storage = world.getChunkManager().threadedAnvilChunkStorage;
+        ThreadedAnvilChunkStorageAccessor accessor = (ThreadedAnvilChunkStorageAccessor) storage;
+        if (accessor.invokeGetChunkHolder(chunk) != null || accessor.getChunksToUnload().containsKey(chunk)) {
+            // Loading, or unloaded but not saved yet.  The chunk in memory would overwrite changes to the region file.
+            return false;
+        }
+        resetUnloadedChunk(world, storage, chunkPos);
+        return true;
+    }
+
+    private void resetLoadedChunk(ServerWorld world, WorldChunk chunk) {
+        for (BlockEntity blockEntity : new ArrayList<>(chunk.getBlockEntities().values())) {
+            if (!(blockEntity instanceof MyLootContainerBlockEntity myLootContainerBlockEntity)) {
+                continue;
+            }
+
+            // Same path as unloaded containers, through the block entity's NBT.  Reading it back only restores the
+            // vanilla state on a reroll, so myLoot's in-memory state is dropped directly.
+            NbtCompound nbt = blockEntity.createNbt();
+            resetContainer(world, blockEntity.getPos(), nbt);
+            blockEntity.readNbt(nbt);
+            myLootContainerBlockEntity.resetInstances(this.playerId);
+            blockEntity.markDirty();
+
+            if (this.playerId == null) {
+                for (ServerPlayerEntity player : PlayerLookup.tracking(blockEntity)) {
+                    MyLootNetworking.sendResetContainer(player, blockEntity.getPos());
+                }
+            } else {
+                ServerPlayerEntity player = world.getServer().getPlayerManager().getPlayer(this.playerId);
+                if (player != null) {
+                    MyLootNetworking.sendResetContainer(player, blockEntity.getPos());
+                }
+            }
+        }
+    }
+
+    private void resetUnloadedChunk(ServerWorld world, ThreadedAnvilChunkStorage storage, ChunkPos chunkPos) {
+        NbtCompound chunkNbt;
+        try {
+            chunkNbt = storage.getNbt(chunkPos);
+        } catch (IOException e) {
+            log.error("Could not read chunk " + chunkPos + " in " + world.getRegistryKey().getValue() + " for myLoot reset", e);
+            return;
+        }
+        if (chunkNbt == null) {
+            return;
+        }
+
+        // Chunks not loaded since before 1.18 still have the old layout, and are upgraded as usual when loaded
+        NbtList blockEntities = chunkNbt.contains("Level", NbtElement.COMPOUND_TYPE)
+                ? chunkNbt.getCompound("Level").getList("TileEntities", NbtElement.COMPOUND_TYPE)
+                : chunkNbt.getList("block_entities", NbtElement.COMPOUND_TYPE);
+        String chestId = String.valueOf(BlockEntityType.getId(MyLootEntities.MY_LOOT_CHEST_BLOCK_ENTITY_TYPE));
+        String barrelId = String.valueOf(BlockEntityType.getId(MyLootEntities.MY_LOOT_BARREL_BLOCK_ENTITY_TYPE));
+        boolean changed = false;
+        for (int i = 0; i < blockEntities.size(); ++i) {
+            NbtCompound nbt = blockEntities.getCompound(i);
+            String id = nbt.getString("id");
+            if (id.equals(chestId) || id.equals(barrelId)) {
+                resetContainer(world, new BlockPos(nbt.getInt("x"), nbt.getInt("y"), nbt.getInt("z")), nbt);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            storage.setNbt(chunkPos, chunkNbt);
+        }
+    }
+
+    private void resetContainer(ServerWorld world, BlockPos pos, NbtCompound nbt) {
+        boolean external = MyLootContainerBlockEntityCommon.hasExternalInstances(nbt);
+        boolean stillOpened = MyLootContainerBlockEntityCommon.resetNbt(nbt, this.playerId, this.reroll, this.random);
+        if (external) {
+            if (this.playerId == null) {
+                ExternalLootStorage.removeContainer(world, pos);
+            } else {
+                ExternalLootStorage.removeInstance(world, pos, this.playerId);
+            }
+        }
+        if (!stillOpened) {
+            MyLootContainerIndex.get(world).markUnopened(pos);
+        }
+        this.resetContainers++;
+    }
+
+    private static int compareRegionOrder(long a, long b) {
+        int ax = ChunkPos.getPackedX(a);
+        int az = ChunkPos.getPackedZ(a);
+        int bx = ChunkPos.getPackedX(b);
+        int bz = ChunkPos.getPackedZ(b);
+        int result = Integer.compare(ax >> 5, bx >> 5);
+        if (result == 0) {
+            result = Integer.compare(az >> 5, bz >> 5);
+        }
+        if (result == 0) {
+            result = Integer.compare(az, bz);
+        }
+        if (result == 0) {
+            result = Integer.compare(ax, bx);
+        }
+        return result;
+    }
+
+    private static LootResetJob fromNbt(NbtCompound nbt) {
+        LootResetJob job = new LootResetJob();
+        job.playerId = nbt.containsUuid("player") ? nbt.getUuid("player") : null;
+        job.reroll = nbt.getBoolean("reroll");
+        NbtCompound worlds = nbt.getCompound("worlds");
+        for (String worldId : worlds.getKeys()) {
+            long[] chunks = worlds.getLongArray(worldId);
+            if (chunks.length > 0) {
+                job.remaining.put(worldId, LongArrayList.wrap(chunks));
+            }
+        }
+        job.totalChunks = nbt.getInt("totalChunks");
+        job.processedChunks = nbt.getInt("processedChunks");
+        job.resetContainers = nbt.getInt("resetContainers");
+        if (job.isRunning()) {
+            log.info("Resuming myLoot reset: {}", job.status());
+        }
+        return job;
+    }
+
+    @Override
+    public NbtCompound writeNbt(NbtCompound nbt) {
+        if (this.playerId != null) {
+            nbt.putUuid("player", this.playerId);
+        }
+        nbt.putBoolean("reroll", this.reroll);
+        NbtCompound worlds = new NbtCompound();
+        this.remaining.forEach((worldId, chunks) -> worlds.putLongArray(worldId, chunks.toLongArray()));
+        nbt.put("worlds", worlds);
+        nbt.putInt("totalChunks", this.totalChunks);
+        nbt.putInt("processedChunks", this.processedChunks);
+        nbt.putInt("resetContainers", this.resetContainers);
+        return nbt;
+    }
+}
@@ -4,77 +4,151 @@ import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.event.player.PlayerBlockBreakEvents;
-import net.minecraft.block.BarrelBlock;
+import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
-import net.minecraft.block.ChestBlock;
-import net.minecraft.block.entity.BarrelBlockEntity;
 import net.minecraft.block.entity.BlockEntity;
-import net.minecraft.block.entity.ChestBlockEntity;
-import net.minecraft.inventory.Inventory;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.item.ItemStack;
 import net.minecraft.server.world.ServerWorld;
-import net.minecraft.state.property.Properties;
 import net.minecraft.util.Identifier;
-import net.minecraft.util.ItemScatterer;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
-import org.spoorn.myloot.block.MyLootBlocks;
 import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.config.ModConfig;
+import org.spoorn.myloot.metrics.MyLootMetrics;
 import org.spoorn.myloot.util.MyLootUtil;
 
-import javax.annotation.concurrent.NotThreadSafe;
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
 
 /**
  * Replaces world generated loot containers with myLoot containers if applicable.
+ *
+ * Replacements can be scheduled from any thread and are drained on the server tick within a per tick count and time
+ * budget.  Anything left over carries over to the next tick.
  */
-@NotThreadSafe
 @Log4j2
 public class LootableContainerReplacer {
     
-    public static Queue<ReplacementInfo> REPLACEMENT_INFOS = new ArrayDeque<>();
+    private static final Map<RegistryKey<World>, ReplacementQueue> REPLACEMENT_QUEUES = new ConcurrentHashMap<>();
     
     public static void init() {
         registerTickCallback();
         registerInstancedLootDrop();
     }
 
+    /**
+     * Schedules a loot container to be replaced on a later server tick, unless the config filters it out or it is
+     * already waiting to be.  Checked before creating the ReplacementInfo, as containers are seen again every time
+     * their chunk loads.  Safe to call from any thread.
+     */
+    public static void schedule(ServerWorld serverWorld, BlockPos pos, Block block, Identifier lootTableId, long lootTableSeed) {
+        if (!ModConfig.get().getContainerFilter().shouldReplace(serverWorld.getRegistryKey(), block, lootTableId)) {
+            return;
+        }
+        ReplacementQueue queue = REPLACEMENT_QUEUES.computeIfAbsent(serverWorld.getRegistryKey(), key -> new ReplacementQueue());
+        if (queue.isScheduled(pos.asLong())) {
+            MyLootMetrics.REPLACEMENTS_DEDUPED.increment();
+            return;
+        }
+        if (!queue.offer(new ReplacementInfo(serverWorld.getRegistryKey(), pos.toImmutable(), lootTableId, lootTableSeed))) {
+            MyLootMetrics.REPLACEMENTS_DEDUPED.increment();
+        }
+    }
+
+    public static int getPendingReplacements() {
+        int pending = 0;
+        for (ReplacementQueue queue : REPLACEMENT_QUEUES.values()) {
+            pending += queue.size();
+        }
+        return pending;
+    }
+
     private static void registerTickCallback() {
         ServerTickEvents.END_SERVER_TICK.register(server -> {
-            int size = REPLACEMENT_INFOS.size();
-            for (int i = 0; i < size; i++) {
-                ReplacementInfo replacementInfo = REPLACEMENT_INFOS.remove();
-                ServerWorld serverWorld = server.getWorld(replacementInfo.worldRegistryKey);
-                
-                if (serverWorld == null) {
+            ModConfig config = ModConfig.get();
+            drain(server.getWorldRegistryKeys(), REPLACEMENT_QUEUES, config.maxReplacementsPerTick, config.maxReplacementMillisPerTick,
+                    (worldRegistryKey, replacementInfo) -> {
+                        ServerWorld serverWorld = server.getWorld(worldRegistryKey);
+                        return serverWorld != null && replace(serverWorld, replacementInfo);
+                    });
+        });
+    }
+
+    /**
+     * Drains the replacement queues of worlds within a count and time budget, as done every server tick.  Takes the
+     * queues and what to do with each replacement, so it can be run without a server, e.g. by the benchmarks.
+     *
+     * @param worlds   worlds in the order they're visited, round-robin
+     * @param replacer replaces a container, returning true if it was
+     * @return the number of replacements taken from the queues
+     */
+    public static int drain(Iterable<RegistryKey<World>> worlds, Map<RegistryKey<World>, ReplacementQueue> queues, int maxReplacements,
+                            double maxMillis, BiPredicate<RegistryKey<World>, ReplacementInfo> replacer) {
+        long start = System.nanoTime();
+        long deadline = start + (long) (maxMillis * 1_000_000);
+        int processed = 0;
+
+        // Round-robin across worlds so one busy dimension can't starve the others
+        boolean hasMore = true;
+        while (hasMore && processed < maxReplacements && System.nanoTime() < deadline) {
+            hasMore = false;
+            for (RegistryKey<World> worldRegistryKey : worlds) {
+                ReplacementQueue queue = queues.get(worldRegistryKey);
+                if (queue == null) {
                     continue;
                 }
-                
-                BlockPos pos = replacementInfo.pos;
-                BlockEntity oldBlockEntity = serverWorld.getBlockEntity(pos);
 
-                if (oldBlockEntity instanceof MyLootContainerBlockEntity) {
+                ReplacementInfo replacementInfo = queue.poll();
+                if (replacementInfo == null) {
                     continue;
                 }
 
-                BlockState oldBlockState = serverWorld.getBlockState(pos);
-                if (replacementInfo.lootTableId != null && MyLootUtil.supportedBlockEntity(oldBlockEntity) && serverWorld.isChunkLoaded(pos)) {
-                    serverWorld.removeBlockEntity(pos);
-                    
-                    if (oldBlockState.getBlock() instanceof ChestBlock) {
-                        serverWorld.setBlockState(pos, MyLootBlocks.MY_LOOT_CHEST_BLOCK.getDefaultState().with(ChestBlock.FACING, oldBlockState.get(ChestBlock.FACING)));
-                    } else if (oldBlockState.getBlock() instanceof BarrelBlock) {
-                        serverWorld.setBlockState(pos, MyLootBlocks.MY_LOOT_BARREL_BLOCK.getDefaultState().with(Properties.FACING, oldBlockState.get(Properties.FACING)));
-                    }
-
-                    BlockEntity newBlockEntity = serverWorld.getBlockEntity(pos);
-                    if (newBlockEntity instanceof MyLootContainerBlockEntity myLootContainerBlockEntity) {
-                        myLootContainerBlockEntity.setLootTable(replacementInfo.lootTableId, replacementInfo.lootTableSeed);
-                    }
+                hasMore = true;
+                processed++;
+                if (replacer.test(worldRegistryKey, replacementInfo)) {
+                    MyLootMetrics.REPLACEMENTS.increment(worldRegistryKey.getValue().toString());
+                }
+                if (processed >= maxReplacements) {
+                    break;
                 }
             }
-        });
+        }
+
+        if (processed > 0) {
+            MyLootMetrics.REPLACEMENT_TICK_MILLIS.observe((System.nanoTime() - start) / 1_000_000.0);
+        }
+        return processed;
+    }
+
+    private static boolean replace(ServerWorld serverWorld, ReplacementInfo replacementInfo) {
+        BlockPos pos = replacementInfo.pos;
+        BlockEntity oldBlockEntity = serverWorld.getBlockEntity(pos);
+
+        if (oldBlockEntity instanceof MyLootContainerBlockEntity) {
+            return false;
+        }
+
+        BlockState oldBlockState = serverWorld.getBlockState(pos);
+        if (replacementInfo.lootTableId != null && MyLootUtil.supportedBlockEntity(oldBlockEntity) && serverWorld.isChunkLoaded(pos)) {
+            serverWorld.removeBlockEntity(pos);
+
+            BlockState newBlockState = MyLootUtil.getReplacementState(oldBlockState);
+            if (newBlockState != null) {
+                serverWorld.setBlockState(pos, newBlockState);
+            }
+
+            BlockEntity newBlockEntity = serverWorld.getBlockEntity(pos);
+            if (newBlockEntity instanceof MyLootContainerBlockEntity myLootContainerBlockEntity) {
+                myLootContainerBlockEntity.setLootTable(replacementInfo.lootTableId, replacementInfo.lootTableSeed);
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -83,15 +157,62 @@ public class LootableContainerReplacer {
     private static void registerInstancedLootDrop() {
         PlayerBlockBreakEvents.AFTER.register((world, player, pos, state, entity) -> {
             if (!world.isClient && (entity instanceof MyLootContainerBlockEntity myLootContainerBlockEntity)) {
-                Inventory instancedInventory = myLootContainerBlockEntity.getPlayerInstancedInventory(player);
-                if (instancedInventory == null) {
-                    //log.error("Got null inventory when checking instanced inventory for player={}, entity={}", player, entity);
-                } else {
-                    ItemScatterer.spawn(world, pos, instancedInventory);
+                List<ItemStack> drops = mergeStacks(myLootContainerBlockEntity.getPlayerDrops(player));
+                if (ModConfig.get().deliverBrokenContainerLoot && !player.isSpectator()) {
+                    for (ItemStack stack : drops) {
+                        player.getInventory().insertStack(stack);
+                        if (!stack.isEmpty()) {
+                            stack.setCount(player.getEnderChestInventory().addStack(stack).getCount());
+                        }
+                    }
+                }
+                for (ItemStack stack : drops) {
+                    if (!stack.isEmpty()) {
+                        spawn(world, pos, stack);
+                    }
                 }
             }
         });
     }
+
+    /**
+     * Copies stacks into as few full stacks as possible, e.g. a loot table rolling the same item into several slots.
+     */
+    private static List<ItemStack> mergeStacks(List<ItemStack> stacks) {
+        List<ItemStack> merged = new ArrayList<>();
+        for (ItemStack stack : stacks) {
+            if (stack.isEmpty()) {
+                continue;
+            }
+            int count = stack.getCount();
+            for (int i = 0; i < merged.size() && count > 0; ++i) {
+                ItemStack mergedStack = merged.get(i);
+                if (mergedStack.getCount() < mergedStack.getMaxCount() && ItemStack.canCombine(mergedStack, stack)) {
+                    int moved = Math.min(count, mergedStack.getMaxCount() - mergedStack.getCount());
+                    mergedStack.increment(moved);
+                    count -= moved;
+                }
+            }
+            while (count > 0) {
+                ItemStack mergedStack = stack.copy();
+                mergedStack.setCount(Math.min(count, stack.getMaxCount()));
+                count -= mergedStack.getCount();
+                merged.add(mergedStack);
+            }
+        }
+        return merged;
+    }
+
+    // Like ItemScatterer, but as one item entity per stack rather than splitting it up
+    private static void spawn(World world, BlockPos pos, ItemStack stack) {
+        double x = pos.getX() + 0.5 + (world.random.nextDouble() - 0.5) * 0.5;
+        double y = pos.getY() + 0.5;
+        double z = pos.getZ() + 0.5 + (world.random.nextDouble() - 0.5) * 0.5;
+        ItemEntity itemEntity = new ItemEntity(world, x, y, z, stack);
+        itemEntity.setVelocity(world.random.nextGaussian() * 0.05, world.random.nextGaussian() * 0.05 + 0.2, world.random.nextGaussian() * 0.05);
+        itemEntity.setToDefaultPickupDelay();
+        world.spawnEntity(itemEntity);
+    }
     
     @AllArgsConstructor
     public static class ReplacementInfo {
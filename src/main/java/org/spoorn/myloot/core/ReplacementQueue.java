@@ -0,0 +1,59 @@
+package org.spoorn.myloot.core;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pending container replacements for a single world.
+ *
+ * Producers are the world generation, chunk loading and server threads, the only consumer is the server tick, so the
+ * queue itself is lock-free.  Positions already waiting in the queue are deduped.
+ */
+public class ReplacementQueue {
+
+    private final Queue<LootableContainerReplacer.ReplacementInfo> queue = new ConcurrentLinkedQueue<>();
+    private final LongSet scheduled = new LongOpenHashSet();
+
+    /**
+     * @return true if the replacement was queued, false if the position was already waiting to be replaced
+     */
+    public boolean offer(LootableContainerReplacer.ReplacementInfo replacementInfo) {
+        synchronized (this.scheduled) {
+            if (!this.scheduled.add(replacementInfo.pos.asLong())) {
+                return false;
+            }
+        }
+        this.queue.add(replacementInfo);
+        return true;
+    }
+
+    /**
+     * @return true if the packed position is already waiting to be replaced
+     */
+    public boolean isScheduled(long pos) {
+        synchronized (this.scheduled) {
+            return this.scheduled.contains(pos);
+        }
+    }
+
+    @Nullable
+    public LootableContainerReplacer.ReplacementInfo poll() {
+        LootableContainerReplacer.ReplacementInfo replacementInfo = this.queue.poll();
+        if (replacementInfo != null) {
+            synchronized (this.scheduled) {
+                this.scheduled.remove(replacementInfo.pos.asLong());
+            }
+        }
+        return replacementInfo;
+    }
+
+    public int size() {
+        synchronized (this.scheduled) {
+            return this.scheduled.size();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.spoorn.myloot.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter, safe to increment from any thread.
+ */
+public class Counter extends Metric {
+
+    private final LongAdder value = new LongAdder();
+
+    public Counter(String name, String help) {
+        super(name, help);
+    }
+
+    public void increment() {
+        this.value.increment();
+    }
+
+    public void add(long amount) {
+        this.value.add(amount);
+    }
+
+    public long get() {
+        return this.value.sum();
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        writeHeader(out, "counter");
+        out.append(this.name).append(' ').append(get()).append('\n');
+    }
+}
@@ -0,0 +1,26 @@
+package org.spoorn.myloot.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Value read when the metrics are reported.
+ */
+public class Gauge extends Metric {
+
+    private final LongSupplier supplier;
+
+    public Gauge(String name, String help, LongSupplier supplier) {
+        super(name, help);
+        this.supplier = supplier;
+    }
+
+    public long get() {
+        return this.supplier.getAsLong();
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        writeHeader(out, "gauge");
+        out.append(this.name).append(' ').append(get()).append('\n');
+    }
+}
@@ -0,0 +1,69 @@
+package org.spoorn.myloot.metrics;
+
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of observed values over fixed buckets, safe to observe from any thread.
+ */
+public class Histogram extends Metric {
+
+    // Inclusive upper bound of each bucket, ascending.  Values above the last go to an implicit +Inf bucket.
+    private final double[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final DoubleAccumulator max = new DoubleAccumulator(Math::max, 0);
+
+    public Histogram(String name, String help, double... bounds) {
+        super(name, help);
+        this.bounds = bounds;
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < this.buckets.length; ++i) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        int i = 0;
+        while (i < this.bounds.length && value > this.bounds[i]) {
+            i++;
+        }
+        this.buckets[i].increment();
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public double getSum() {
+        return this.sum.sum();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : getSum() / count;
+    }
+
+    public double getMax() {
+        return this.max.get();
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        writeHeader(out, "histogram");
+        long cumulative = 0;
+        for (int i = 0; i < this.bounds.length; ++i) {
+            cumulative += this.buckets[i].sum();
+            out.append(this.name).append("_bucket{le=\"").append(this.bounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += this.buckets[this.bounds.length].sum();
+        out.append(this.name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(this.name).append("_sum ").append(getSum()).append('\n');
+        out.append(this.name).append("_count ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,52 @@
+package org.spoorn.myloot.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter split by the value of a single label, e.g. per world.
+ */
+public class LabeledCounter extends Metric {
+
+    private final String label;
+    private final Map<String, LongAdder> values = new ConcurrentHashMap<>();
+
+    public LabeledCounter(String name, String help, String label) {
+        super(name, help);
+        this.label = label;
+    }
+
+    public void increment(String labelValue) {
+        this.values.computeIfAbsent(labelValue, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return the count per label value, sorted by label value
+     */
+    public Map<String, Long> get() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        this.values.forEach((labelValue, value) -> snapshot.put(labelValue, value.sum()));
+        return snapshot;
+    }
+
+    public long total() {
+        long total = 0;
+        for (LongAdder value : this.values.values()) {
+            total += value.sum();
+        }
+        return total;
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        writeHeader(out, "counter");
+        get().forEach((labelValue, value) -> out.append(this.name).append('{').append(this.label).append("=\"")
+                .append(escape(labelValue)).append("\"} ").append(value).append('\n'));
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,26 @@
+package org.spoorn.myloot.metrics;
+
+/**
+ * A named metric that can be written in the Prometheus text format.
+ */
+public abstract class Metric {
+
+    protected final String name;
+    protected final String help;
+
+    protected Metric(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    abstract void writePrometheus(StringBuilder out);
+
+    protected void writeHeader(StringBuilder out, String type) {
+        out.append("# HELP ").append(this.name).append(' ').append(this.help).append('\n');
+        out.append("# TYPE ").append(this.name).append(' ').append(type).append('\n');
+    }
+}
@@ -0,0 +1,227 @@
+package org.spoorn.myloot.metrics;
+
+import lombok.extern.log4j.Log4j2;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerBlockEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.server.MinecraftServer;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.config.ModConfig;
+import org.spoorn.myloot.core.LootableContainerReplacer;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Counters and histograms for myLoot, reported through /myloot stats, a periodic log line, and optionally a file in
+ * the Prometheus text format.  The file is written on a background thread, which reads loaded containers through
+ * their {@link MyLootContainerBlockEntity#getInstanceSnapshot() snapshots}.  All values are cumulative since server start, except the per-save line logged by
+ * {@link #logSaveCounters()}.
+ */
+@Log4j2
+public final class MyLootMetrics {
+
+    private static final double[] MILLIS_BUCKETS = {0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 50};
+    private static final double[] MICROS_BUCKETS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 10000};
+    private static final double[] BYTES_BUCKETS = {64, 256, 1024, 4096, 16384, 65536, 262144, 1048576};
+
+    // Container replacement
+    public static final Gauge REPLACEMENT_QUEUE_DEPTH = new Gauge("myloot_replacement_queue_depth",
+            "Loot containers waiting to be replaced with myLoot containers", LootableContainerReplacer::getPendingReplacements);
+    public static final Histogram REPLACEMENT_TICK_MILLIS = new Histogram("myloot_replacement_tick_millis",
+            "Time spent replacing loot containers in server ticks that replaced any", MILLIS_BUCKETS);
+    public static final LabeledCounter REPLACEMENTS = new LabeledCounter("myloot_replacements_total",
+            "Loot containers replaced with myLoot containers", "world");
+    public static final Counter REPLACEMENTS_DEDUPED = new Counter("myloot_replacements_deduped_total",
+            "Loot containers not queued for replacement as they were already waiting in the queue");
+
+    // myLoot containers in loaded chunks, only read through their snapshots
+    private static final Set<MyLootContainerBlockEntity> LOADED_CONTAINERS = ConcurrentHashMap.newKeySet();
+
+    // Instances
+    public static final Gauge CONTAINERS_LOADED = new Gauge("myloot_containers_loaded",
+            "myLoot containers in loaded chunks", LOADED_CONTAINERS::size);
+    public static final Gauge INSTANCES_LOADED = new Gauge("myloot_instances_loaded",
+            "Instanced inventories held by myLoot containers in loaded chunks, decoded or not", MyLootMetrics::countLoadedInstances);
+    public static final Counter INSTANCES_CREATED = new Counter("myloot_instances_created_total",
+            "Instanced inventories created for players opening a myLoot container the first time");
+    public static final Counter PLAYER_ROLLS = new Counter("myloot_player_rolls_total",
+            "Loot tables rolled for a single player's instance, if perPlayerLootRolls is enabled");
+    public static final Counter INSTANCES_REFRESHED = new Counter("myloot_instances_refreshed_total",
+            "Instanced inventories replaced with fresh loot as their player opened the container after lootRefreshMinutes");
+    public static final Counter INSTANCES_EVICTED = new Counter("myloot_instances_evicted_total",
+            "Instanced inventories evicted for not being opened in a while or exceeding the per-container limit");
+    public static final Counter INSTANCES_PREPARED = new Counter("myloot_instances_prepared_total",
+            "Instanced inventories handed loot prepared ahead of time, if prepareInstancesRange is set");
+
+    // Block entity NBT
+    public static final Histogram READ_NBT_MICROS = new Histogram("myloot_read_nbt_micros",
+            "Time spent reading the myLoot NBT of a container", MICROS_BUCKETS);
+    public static final Histogram WRITE_NBT_MICROS = new Histogram("myloot_write_nbt_micros",
+            "Time spent writing the myLoot NBT of a container", MICROS_BUCKETS);
+    public static final Histogram READ_NBT_BYTES = new Histogram("myloot_read_nbt_bytes",
+            "Uncompressed size of the myLoot NBT of containers read, if measureNbtBytes is enabled", BYTES_BUCKETS);
+    public static final Histogram WRITE_NBT_BYTES = new Histogram("myloot_write_nbt_bytes",
+            "Uncompressed size of the myLoot NBT of containers re-encoded, if measureNbtBytes is enabled", BYTES_BUCKETS);
+    public static final Counter CONTAINERS_ENCODED = new Counter("myloot_containers_encoded_total",
+            "Container saves that had to re-encode the myLoot NBT");
+    public static final Counter CONTAINERS_REUSED = new Counter("myloot_containers_reused_total",
+            "Container saves that re-used the previously encoded myLoot NBT");
+    public static final Counter INSTANCES_ENCODED = new Counter("myloot_instances_encoded_total",
+            "Instances re-encoded by container saves");
+    public static final Counter INSTANCES_REUSED = new Counter("myloot_instances_reused_total",
+            "Instances re-used from a previous encoding by container saves");
+
+    // Networking
+    public static final Histogram SYNC_PACKET_BYTES = new Histogram("myloot_sync_packet_bytes",
+            "Size of opened container sync packets sent to players", BYTES_BUCKETS);
+
+    private static final List<Metric> METRICS = List.of(REPLACEMENT_QUEUE_DEPTH, REPLACEMENT_TICK_MILLIS, REPLACEMENTS, REPLACEMENTS_DEDUPED,
+            CONTAINERS_LOADED, INSTANCES_LOADED, INSTANCES_CREATED, PLAYER_ROLLS, INSTANCES_REFRESHED, INSTANCES_EVICTED, INSTANCES_PREPARED, READ_NBT_MICROS, WRITE_NBT_MICROS, READ_NBT_BYTES, WRITE_NBT_BYTES, CONTAINERS_ENCODED,
+            CONTAINERS_REUSED, INSTANCES_ENCODED, INSTANCES_REUSED, SYNC_PACKET_BYTES);
+
+    private static final ExecutorService FILE_WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "myLoot Metrics Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static int ticksSinceReport = 0;
+    // Save counters at the end of the last save, only touched from the server thread
+    private static long containersEncodedAtSave = 0;
+    private static long containersReusedAtSave = 0;
+    private static long instancesEncodedAtSave = 0;
+    private static long instancesReusedAtSave = 0;
+
+    public static void init() {
+        ServerTickEvents.END_SERVER_TICK.register(MyLootMetrics::tick);
+        ServerBlockEntityEvents.BLOCK_ENTITY_LOAD.register((blockEntity, world) -> {
+            if (blockEntity instanceof MyLootContainerBlockEntity myLootContainerBlockEntity) {
+                LOADED_CONTAINERS.add(myLootContainerBlockEntity);
+            }
+        });
+        ServerBlockEntityEvents.BLOCK_ENTITY_UNLOAD.register((blockEntity, world) -> {
+            if (blockEntity instanceof MyLootContainerBlockEntity myLootContainerBlockEntity) {
+                LOADED_CONTAINERS.remove(myLootContainerBlockEntity);
+            }
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> LOADED_CONTAINERS.clear());
+    }
+
+    private static void tick(MinecraftServer server) {
+        ModConfig config = ModConfig.get();
+        if (config.statsLogIntervalTicks <= 0 || ++ticksSinceReport < config.statsLogIntervalTicks) {
+            return;
+        }
+        ticksSinceReport = 0;
+
+        for (String line : summary()) {
+            log.info(line);
+        }
+        if (config.prometheusFile != null && !config.prometheusFile.isEmpty()) {
+            Path path = server.getRunDirectory().toPath().resolve(config.prometheusFile);
+            FILE_WRITER.execute(() -> writePrometheusFile(path));
+        }
+    }
+
+    /**
+     * Logs how many containers and instances were re-encoded versus re-used since the last save.  Called after each
+     * save, including autosaves.
+     */
+    public static void logSaveCounters() {
+        long containersEncoded = CONTAINERS_ENCODED.get();
+        long containersReused = CONTAINERS_REUSED.get();
+        long instancesEncoded = INSTANCES_ENCODED.get();
+        long instancesReused = INSTANCES_REUSED.get();
+        if (containersEncoded > containersEncodedAtSave || containersReused > containersReusedAtSave) {
+            log.info("Saved myLoot containers: re-encoded {} containers and {} instances, re-used {} containers and {} instances",
+                    containersEncoded - containersEncodedAtSave, instancesEncoded - instancesEncodedAtSave,
+                    containersReused - containersReusedAtSave, instancesReused - instancesReusedAtSave);
+        }
+        containersEncodedAtSave = containersEncoded;
+        containersReusedAtSave = containersReused;
+        instancesEncodedAtSave = instancesEncoded;
+        instancesReusedAtSave = instancesReused;
+    }
+
+    // Safe from any thread, as it only reads the containers' snapshots
+    private static long countLoadedInstances() {
+        long instances = 0;
+        for (MyLootContainerBlockEntity container : LOADED_CONTAINERS) {
+            instances += container.getInstanceSnapshot().getPlayersWithInstances().size();
+        }
+        return instances;
+    }
+
+    /**
+     * Records how long a container's NBT took to read or write, since start from {@link System#nanoTime()}.
+     */
+    public static void recordNbtTime(Histogram histogram, long start) {
+        histogram.observe((System.nanoTime() - start) / 1000.0);
+    }
+
+    /**
+     * Records the uncompressed size of a myLoot compound if measureNbtBytes is enabled, which serializes it again.
+     */
+    public static void recordNbtBytes(Histogram histogram, NbtElement nbt) {
+        if (!ModConfig.get().measureNbtBytes) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(OutputStream.nullOutputStream())) {
+            nbt.write(out);
+            histogram.observe(out.size());
+        } catch (IOException e) {
+            log.debug("Could not measure myLoot NBT size", e);
+        }
+    }
+
+    public static List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "myLoot replacements: %d replaced %s, %d deduped, %d pending, %.2f ms mean / %.2f ms max per tick",
+                REPLACEMENTS.total(), REPLACEMENTS.get(), REPLACEMENTS_DEDUPED.get(), REPLACEMENT_QUEUE_DEPTH.get(), REPLACEMENT_TICK_MILLIS.getMean(), REPLACEMENT_TICK_MILLIS.getMax()));
+        lines.add(String.format(Locale.ROOT, "myLoot instances: %d loaded in %d containers, %d created, %d own rolls, %d refreshed, %d evicted, %d prepared",
+                INSTANCES_LOADED.get(), CONTAINERS_LOADED.get(), INSTANCES_CREATED.get(), PLAYER_ROLLS.get(), INSTANCES_REFRESHED.get(), INSTANCES_EVICTED.get(), INSTANCES_PREPARED.get()));
+        lines.add(String.format(Locale.ROOT, "myLoot NBT: %d reads at %.1f us mean, %d writes at %.1f us mean, %d containers and %d instances re-encoded, %d containers and %d instances re-used",
+                READ_NBT_MICROS.getCount(), READ_NBT_MICROS.getMean(), WRITE_NBT_MICROS.getCount(), WRITE_NBT_MICROS.getMean(),
+                CONTAINERS_ENCODED.get(), INSTANCES_ENCODED.get(), CONTAINERS_REUSED.get(), INSTANCES_REUSED.get()));
+        if (READ_NBT_BYTES.getCount() > 0 || WRITE_NBT_BYTES.getCount() > 0) {
+            lines.add(String.format(Locale.ROOT, "myLoot NBT size: %.0f bytes mean / %.0f max read, %.0f bytes mean / %.0f max written",
+                    READ_NBT_BYTES.getMean(), READ_NBT_BYTES.getMax(), WRITE_NBT_BYTES.getMean(), WRITE_NBT_BYTES.getMax()));
+        }
+        lines.add(String.format(Locale.ROOT, "myLoot sync: %d packets, %.0f bytes total",
+                SYNC_PACKET_BYTES.getCount(), SYNC_PACKET_BYTES.getSum()));
+        return lines;
+    }
+
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : METRICS) {
+            metric.writePrometheus(out);
+        }
+        return out.toString();
+    }
+
+    // Written to a temporary file first, so scrapers never see a partial file
+    private static void writePrometheusFile(Path path) {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.writeString(tmp, toPrometheus(), StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not write myLoot metrics to " + path, e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.spoorn.myloot.mixin;
 
+import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BarrelBlockEntity;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.block.entity.ChestBlockEntity;
@@ -12,6 +13,7 @@ import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
 import org.spoorn.myloot.core.LootableContainerReplacer;
 import org.spoorn.myloot.util.MyLootUtil;
 
@@ -22,15 +24,20 @@ public abstract class BlockEntityMixin {
 
     @Shadow public abstract BlockPos getPos();
 
+    @Shadow public abstract BlockState getCachedState();
+
     /**
-     * When BlockEntities are created, add them as a myLoot container if applicable.
+     * When BlockEntities are created, add them as a myLoot container if applicable.  This runs for every block entity
+     * of every loaded chunk, so anything that won't be replaced is rejected before queueing it.
      */
     @Inject(method = "setWorld", at = @At(value = "TAIL"))
     private void replaceLootableContainer(World world, CallbackInfo ci) {
-        if (this.world instanceof ServerWorld && MyLootUtil.supportedBlockEntity((Object) this)) {
+        // myLoot containers extend the vanilla ones, and keep their loot table until first opened
+        if (this.world instanceof ServerWorld serverWorld && MyLootUtil.supportedBlockEntity((Object) this)
+                && !((Object) this instanceof MyLootContainerBlockEntity)) {
             LootableContainerBlockEntityAccessor accessor = (LootableContainerBlockEntityAccessor) (Object) this;
             if (accessor.getLootTableId() != null) {
-                LootableContainerReplacer.REPLACEMENT_INFOS.add(new LootableContainerReplacer.ReplacementInfo(this.world.getRegistryKey(), this.getPos(), accessor.getLootTableId(), accessor.getLootTableSeed()));
+                LootableContainerReplacer.schedule(serverWorld, this.getPos(), this.getCachedState().getBlock(), accessor.getLootTableId(), accessor.getLootTableSeed());
             }
         }
     }
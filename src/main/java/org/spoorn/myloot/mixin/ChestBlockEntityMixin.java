@@ -10,9 +10,6 @@ import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import org.spoorn.myloot.block.entity.MyLootChestBlockEntity;
-import org.spoorn.myloot.block.entity.MyLootInventory;
-
-import java.util.Map;
 
 @Mixin(ChestBlockEntity.class)
 public class ChestBlockEntityMixin {
@@ -20,9 +17,7 @@ public class ChestBlockEntityMixin {
     @Inject(method = "copyInventory", at = @At(value = "TAIL"))
     private static void copyMyLootInventories(ChestBlockEntity from, ChestBlockEntity to, CallbackInfo ci) {
         if (from instanceof MyLootChestBlockEntity fromMyLootContainer && to instanceof MyLootChestBlockEntity toMyLootContainer) {
-            Map<String, MyLootInventory> inventories = fromMyLootContainer.getInventories();
-            fromMyLootContainer.setInventories(toMyLootContainer.getInventories());
-            toMyLootContainer.setInventories(inventories);
+            fromMyLootContainer.swapInstances(toMyLootContainer);
         }
     }
     
@@ -1,18 +1,20 @@
 package org.spoorn.myloot.mixin;
 
-import net.minecraft.block.entity.BarrelBlockEntity;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
-import net.minecraft.block.entity.ChestBlockEntity;
 import net.minecraft.block.entity.LootableContainerBlockEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.BlockView;
+import net.minecraft.world.ChunkRegion;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.config.ModConfig;
 import org.spoorn.myloot.core.LootableContainerReplacer;
 import org.spoorn.myloot.util.MyLootUtil;
 
@@ -24,6 +26,9 @@ public class LootableContainerBlockEntityMixin {
     /**
      * Marks lootable containers as replaceable.  The world parameter here can't be used to directly modify blocks as
      * it is a {@link BlockView} which is read-only and will freeze the game.
+     * 
+     * The exception is world generation, where the world is a {@link ChunkRegion} over proto chunks.  There we can swap
+     * in the myLoot container directly, and vanilla sets the loot table on the new myLoot block entity.
      */
     @Inject(method = "setLootTable(Lnet/minecraft/world/BlockView;Ljava/util/Random;Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/util/Identifier;)V",
         at = @At(value = "HEAD"), cancellable = true)
@@ -33,9 +38,23 @@ public class LootableContainerBlockEntityMixin {
         if (id == null || be == null || be instanceof MyLootContainerBlockEntity) {
             return;
         }
+
+        if (world instanceof ChunkRegion chunkRegion) {
+            BlockState oldBlockState = chunkRegion.getBlockState(pos);
+            if (ModConfig.get().replaceDuringWorldGeneration && MyLootUtil.supportedBlockEntity(be)
+                    && ModConfig.get().getContainerFilter().shouldReplace(chunkRegion.toServerWorld().getRegistryKey(), oldBlockState.getBlock(), id)) {
+                BlockState newBlockState = MyLootUtil.getReplacementState(oldBlockState);
+                if (newBlockState != null) {
+                    // Proto chunks don't drop the old block entity when the state changes
+                    chunkRegion.getChunk(pos).removeBlockEntity(pos);
+                    chunkRegion.setBlockState(pos, newBlockState, Block.NOTIFY_LISTENERS);
+                }
+            }
+            return;
+        }
         
-        if (be.getWorld() instanceof ServerWorld && MyLootUtil.supportedBlockEntity(be)) {
-            LootableContainerReplacer.REPLACEMENT_INFOS.add(new LootableContainerReplacer.ReplacementInfo(be.getWorld().getRegistryKey(), pos, id, random.nextLong()));
+        if (be.getWorld() instanceof ServerWorld serverWorld && MyLootUtil.supportedBlockEntity(be)) {
+            LootableContainerReplacer.schedule(serverWorld, pos, be.getCachedState().getBlock(), id, random.nextLong());
         }
     }
 }
@@ -0,0 +1,29 @@
+package org.spoorn.myloot.mixin;
+
+import net.minecraft.server.MinecraftServer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.spoorn.myloot.metrics.MyLootMetrics;
+import org.spoorn.myloot.storage.ExternalLootStorage;
+
+@Mixin(MinecraftServer.class)
+public class MinecraftServerMixin {
+
+    /**
+     * Flush externally stored instances on each save, including autosaves.
+     */
+    @Inject(method = "save", at = @At(value = "RETURN"))
+    private void flushExternalLootStorage(boolean suppressLogs, boolean flush, boolean force, CallbackInfoReturnable<Boolean> cir) {
+        ExternalLootStorage.flush((MinecraftServer) (Object) this);
+    }
+
+    /**
+     * Report how much myLoot data each save, including autosaves, had to re-encode.
+     */
+    @Inject(method = "save", at = @At(value = "RETURN"))
+    private void reportMyLootSaveCounters(boolean suppressLogs, boolean flush, boolean force, CallbackInfoReturnable<Boolean> cir) {
+        MyLootMetrics.logSaveCounters();
+    }
+}
@@ -0,0 +1,40 @@
+package org.spoorn.myloot.mixin;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.structure.StructurePiece;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.ServerWorldAccess;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spoorn.myloot.config.ModConfig;
+import org.spoorn.myloot.util.MyLootUtil;
+
+import java.util.Random;
+
+@Mixin(StructurePiece.class)
+public class StructurePieceMixin {
+
+    /**
+     * Structure pieces place their loot chests directly and set the loot table on the block entity, skipping
+     * {@link net.minecraft.block.entity.LootableContainerBlockEntity#setLootTable}.  Place a myLoot chest instead, which
+     * is still a ChestBlockEntity so the loot table is set the same way.  Redirected rather than modifying the state
+     * argument, to get at the loot table for the config filter.
+     */
+    @Redirect(method = "addChest(Lnet/minecraft/world/ServerWorldAccess;Lnet/minecraft/util/math/BlockBox;Ljava/util/Random;Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/util/Identifier;Lnet/minecraft/block/BlockState;)Z",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/world/ServerWorldAccess;setBlockState(Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;I)Z"))
+    private boolean placeMyLootChest(ServerWorldAccess world, BlockPos pos, BlockState state, int flags,
+                                     ServerWorldAccess targetWorld, BlockBox boundingBox, Random random, BlockPos targetPos, Identifier lootTableId, @Nullable BlockState block) {
+        if (ModConfig.get().replaceDuringWorldGeneration
+                && ModConfig.get().getContainerFilter().shouldReplace(world.toServerWorld().getRegistryKey(), state.getBlock(), lootTableId)) {
+            BlockState newBlockState = MyLootUtil.getReplacementState(state);
+            if (newBlockState != null) {
+                return world.setBlockState(pos, newBlockState, flags);
+            }
+        }
+        return world.setBlockState(pos, state, flags);
+    }
+}
@@ -0,0 +1,21 @@
+package org.spoorn.myloot.mixin;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.server.world.ChunkHolder;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(ThreadedAnvilChunkStorage.class)
+public interface ThreadedAnvilChunkStorageAccessor {
+
+    @Nullable
+    @Invoker("getChunkHolder")
+    ChunkHolder invokeGetChunkHolder(long pos);
+
+    // Chunks no longer in the holder map, but not saved yet
+    @Accessor("chunksToUnload")
+    Long2ObjectLinkedOpenHashMap<ChunkHolder> getChunksToUnload();
+}
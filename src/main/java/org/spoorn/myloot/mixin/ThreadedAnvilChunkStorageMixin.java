@@ -0,0 +1,25 @@
+package org.spoorn.myloot.mixin;
+
+import net.minecraft.network.packet.s2c.play.ChunkDataS2CPacket;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import net.minecraft.world.chunk.WorldChunk;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spoorn.myloot.network.MyLootNetworking;
+
+@Mixin(ThreadedAnvilChunkStorage.class)
+public class ThreadedAnvilChunkStorageMixin {
+
+    /**
+     * Chunk data packets are shared between all players watching a chunk, so myLoot containers don't sync anything
+     * in them.  Follow up with the opened state that is specific to this player.
+     */
+    @Inject(method = "sendChunkDataPackets", at = @At(value = "TAIL"))
+    private void sendMyLootOpenedState(ServerPlayerEntity player, MutableObject<ChunkDataS2CPacket> cachedDataPacket, WorldChunk chunk, CallbackInfo ci) {
+        MyLootNetworking.sendOpenedContainers(player, chunk);
+    }
+}
@@ -0,0 +1,76 @@
+package org.spoorn.myloot.network;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.WorldChunk;
+import org.spoorn.myloot.MyLoot;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+import org.spoorn.myloot.metrics.MyLootMetrics;
+
+/**
+ * Server to client sync for myLoot containers.
+ *
+ * Clients only need to know whether they themselves have opened a container in order to render the opened variant,
+ * so instead of syncing the whole block entity NBT (which holds every player's instanced loot), we send the positions
+ * of the containers the receiving player has opened.  Item contents never leave the server outside of screen handlers.
+ */
+public final class MyLootNetworking {
+
+    public static final Identifier OPENED_CONTAINERS_ID = new Identifier(MyLoot.MODID, "opened_containers");
+    // Same payload, for containers the player's opened state was reset for
+    public static final Identifier RESET_CONTAINERS_ID = new Identifier(MyLoot.MODID, "reset_containers");
+
+    /**
+     * Sends the positions of all myLoot containers in a chunk that the player has opened.  Nothing is sent if the
+     * player hasn't opened any of them.
+     */
+    public static void sendOpenedContainers(ServerPlayerEntity player, WorldChunk chunk) {
+        LongArrayList positions = null;
+        for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+            if (blockEntity instanceof MyLootContainerBlockEntity myLootContainerBlockEntity && myLootContainerBlockEntity.hasPlayerOpened(player)) {
+                if (positions == null) {
+                    positions = new LongArrayList();
+                }
+                positions.add(blockEntity.getPos().asLong());
+            }
+        }
+
+        if (positions != null) {
+            PacketByteBuf buf = PacketByteBufs.create();
+            buf.writeVarInt(positions.size());
+            for (int i = 0; i < positions.size(); ++i) {
+                buf.writeLong(positions.getLong(i));
+            }
+            MyLootMetrics.SYNC_PACKET_BYTES.observe(buf.readableBytes());
+            ServerPlayNetworking.send(player, OPENED_CONTAINERS_ID, buf);
+        }
+    }
+
+    /**
+     * Tells a single player they have opened the myLoot container at pos.
+     */
+    public static void sendOpenedContainer(ServerPlayerEntity player, BlockPos pos) {
+        sendSingle(player, OPENED_CONTAINERS_ID, pos);
+    }
+
+    /**
+     * Tells a single player the myLoot container at pos is no longer opened for them, after a loot reset.
+     */
+    public static void sendResetContainer(ServerPlayerEntity player, BlockPos pos) {
+        sendSingle(player, RESET_CONTAINERS_ID, pos);
+    }
+
+    private static void sendSingle(ServerPlayerEntity player, Identifier channel, BlockPos pos) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(1);
+        buf.writeLong(pos.asLong());
+        MyLootMetrics.SYNC_PACKET_BYTES.observe(buf.readableBytes());
+        ServerPlayNetworking.send(player, channel, buf);
+    }
+}
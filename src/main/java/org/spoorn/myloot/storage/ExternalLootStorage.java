@@ -0,0 +1,192 @@
+package org.spoorn.myloot.storage;
+
+import lombok.extern.log4j.Log4j2;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import net.minecraft.world.dimension.DimensionType;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Optional storage backend that keeps instanced loot out of the chunk, in one {@link RegionLootFile} per region under
+ * the dimension's myloot/ folder.  myLoot containers using it only keep the opened players in their block entity NBT,
+ * and load each player's instance the first time it's needed.
+ *
+ * Region files are opened on demand.  A file is closed on the first save after its region has no loaded chunks left,
+ * and the least recently used file is closed when more than {@link #MAX_OPEN_FILES} are open, e.g. while a reset walks
+ * unloaded regions.
+ */
+@Log4j2
+public final class ExternalLootStorage {
+
+    private static final String FOLDER = "myloot";
+    private static final int MAX_OPEN_FILES = 64;
+    // Access ordered, so the eldest entry is the least recently used file
+    private static final Map<RegionKey, RegionLootFile> REGION_FILES = new LinkedHashMap<>(16, 0.75f, true);
+
+    public static void init() {
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> closeAll());
+    }
+
+    @Nullable
+    public static NbtCompound read(ServerWorld world, BlockPos pos, UUID playerId) {
+        RegionLootFile file = getRegionFile(world, pos, false);
+        if (file != null) {
+            try {
+                return file.read(pos.asLong(), playerId);
+            } catch (IOException e) {
+                log.error("Could not read myLoot instance for player=" + playerId + " at " + pos + " in " + world.getRegistryKey().getValue(), e);
+            }
+        }
+        return null;
+    }
+
+    public static Map<UUID, NbtCompound> readAll(ServerWorld world, BlockPos pos) {
+        RegionLootFile file = getRegionFile(world, pos, false);
+        if (file != null) {
+            try {
+                return file.readAll(pos.asLong());
+            } catch (IOException e) {
+                log.error("Could not read myLoot instances at " + pos + " in " + world.getRegistryKey().getValue(), e);
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    public static void write(ServerWorld world, BlockPos pos, UUID playerId, NbtCompound nbt) {
+        RegionLootFile file = getRegionFile(world, pos, true);
+        if (file != null) {
+            try {
+                file.write(pos.asLong(), playerId, nbt);
+            } catch (IOException e) {
+                log.error("Could not write myLoot instance for player=" + playerId + " at " + pos + " in " + world.getRegistryKey().getValue(), e);
+            }
+        }
+    }
+
+    public static void removeInstance(ServerWorld world, BlockPos pos, UUID playerId) {
+        RegionLootFile file = getRegionFile(world, pos, false);
+        if (file != null) {
+            try {
+                file.removeInstance(pos.asLong(), playerId);
+            } catch (IOException e) {
+                log.error("Could not remove myLoot instance for player=" + playerId + " at " + pos + " in " + world.getRegistryKey().getValue(), e);
+            }
+        }
+    }
+
+    /**
+     * Removes every player's instance of a container, e.g. when it is broken.
+     */
+    public static void removeContainer(ServerWorld world, BlockPos pos) {
+        RegionLootFile file = getRegionFile(world, pos, false);
+        if (file != null) {
+            try {
+                file.removeContainer(pos.asLong());
+            } catch (IOException e) {
+                log.error("Could not remove myLoot instances at " + pos + " in " + world.getRegistryKey().getValue(), e);
+            }
+        }
+    }
+
+    /**
+     * Flushes every open region file, and closes those whose region no longer has any loaded chunks.  Called on each
+     * save, so the chunks' own saves on unload have already written their instances.
+     */
+    public static synchronized void flush(MinecraftServer server) {
+        Iterator<Map.Entry<RegionKey, RegionLootFile>> iterator = REGION_FILES.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<RegionKey, RegionLootFile> entry = iterator.next();
+            ServerWorld world = server.getWorld(entry.getKey().world());
+            if (world == null || !hasLoadedChunks(world, entry.getKey())) {
+                iterator.remove();
+                close(entry.getValue());
+            } else {
+                try {
+                    entry.getValue().flush();
+                } catch (IOException e) {
+                    log.error("Could not flush myLoot region file", e);
+                }
+            }
+        }
+    }
+
+    private static boolean hasLoadedChunks(ServerWorld world, RegionKey regionKey) {
+        ServerChunkManager chunkManager = world.getChunkManager();
+        int startX = regionKey.x() << 5;
+        int startZ = regionKey.z() << 5;
+        for (int x = startX; x < startX + 32; ++x) {
+            for (int z = startZ; z < startZ + 32; ++z) {
+                if (chunkManager.isChunkLoaded(x, z)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static synchronized void closeAll() {
+        for (RegionLootFile file : REGION_FILES.values()) {
+            close(file);
+        }
+        REGION_FILES.clear();
+    }
+
+    private static void close(RegionLootFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.error("Could not close myLoot region file", e);
+        }
+    }
+
+    @Nullable
+    private static synchronized RegionLootFile getRegionFile(ServerWorld world, BlockPos pos, boolean create) {
+        int regionX = pos.getX() >> 9;
+        int regionZ = pos.getZ() >> 9;
+        RegionKey regionKey = new RegionKey(world.getRegistryKey(), regionX, regionZ);
+        RegionLootFile file = REGION_FILES.get(regionKey);
+        if (file != null) {
+            return file;
+        }
+
+        Path folder = DimensionType.getSaveDirectory(world.getRegistryKey(), world.getServer().getSavePath(WorldSavePath.ROOT)).resolve(FOLDER);
+        Path path = folder.resolve("r." + regionX + "." + regionZ + ".mlr");
+        if (!create && !Files.exists(path)) {
+            return null;
+        }
+
+        try {
+            Files.createDirectories(folder);
+            file = new RegionLootFile(path);
+            REGION_FILES.put(regionKey, file);
+            if (REGION_FILES.size() > MAX_OPEN_FILES) {
+                Iterator<RegionLootFile> eldest = REGION_FILES.values().iterator();
+                close(eldest.next());
+                eldest.remove();
+            }
+            return file;
+        } catch (IOException e) {
+            log.error("Could not open myLoot region file " + path, e);
+            return null;
+        }
+    }
+
+    private record RegionKey(RegistryKey<World> world, int x, int z) {
+    }
+}
@@ -0,0 +1,192 @@
+package org.spoorn.myloot.storage;
+
+import it.unimi.dsi.fastutil.longs.*;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerBlockEntityEvents;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.PersistentState;
+import org.spoorn.myloot.MyLoot;
+import org.spoorn.myloot.block.entity.MyLootContainerBlockEntity;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Per-world index of all myLoot container positions, saved with the world in data/myloot_containers.dat.  This allows
+ * finding containers without loading or scanning chunks.
+ *
+ * Positions are packed with {@link BlockPos#asLong()} and grouped by chunk.  Containers are added as their block
+ * entities load, which also picks up containers from before the index existed, and removed when the block is broken
+ * or replaced.  Whether any player has opened a container is tracked too.  Like other persistent state, it is only
+ * accessed from the server thread.
+ */
+public class MyLootContainerIndex extends PersistentState {
+
+    private static final String ID = MyLoot.MODID + "_containers";
+
+    // chunk pos -> container positions in that chunk
+    private final Long2ObjectMap<LongSet> byChunk = new Long2ObjectOpenHashMap<>();
+    private final LongSet opened = new LongOpenHashSet();
+    private int size = 0;
+
+    public static void init() {
+        ServerBlockEntityEvents.BLOCK_ENTITY_LOAD.register((blockEntity, world) -> {
+            if (blockEntity instanceof MyLootContainerBlockEntity myLootContainerBlockEntity) {
+                MyLootContainerIndex index = get(world);
+                index.add(blockEntity.getPos());
+                if (myLootContainerBlockEntity.hasBeenOpened()) {
+                    index.markOpened(blockEntity.getPos());
+                }
+            }
+        });
+    }
+
+    public static MyLootContainerIndex get(ServerWorld world) {
+        return world.getPersistentStateManager().getOrCreate(MyLootContainerIndex::fromNbt, MyLootContainerIndex::new, ID);
+    }
+
+    private static MyLootContainerIndex fromNbt(NbtCompound nbt) {
+        MyLootContainerIndex index = new MyLootContainerIndex();
+        for (long pos : nbt.getLongArray("containers")) {
+            index.add(pos);
+        }
+        for (long pos : nbt.getLongArray("opened")) {
+            index.opened.add(pos);
+        }
+        index.setDirty(false);
+        return index;
+    }
+
+    @Override
+    public NbtCompound writeNbt(NbtCompound nbt) {
+        long[] containers = new long[this.size];
+        int i = 0;
+        for (LongSet positions : this.byChunk.values()) {
+            for (long pos : positions) {
+                containers[i++] = pos;
+            }
+        }
+        nbt.putLongArray("containers", containers);
+        nbt.putLongArray("opened", this.opened.toLongArray());
+        return nbt;
+    }
+
+    public void add(BlockPos pos) {
+        add(pos.asLong());
+    }
+
+    private void add(long pos) {
+        long chunk = ChunkPos.toLong(BlockPos.unpackLongX(pos) >> 4, BlockPos.unpackLongZ(pos) >> 4);
+        if (this.byChunk.computeIfAbsent(chunk, key -> new LongOpenHashSet()).add(pos)) {
+            this.size++;
+            markDirty();
+        }
+    }
+
+    public void remove(BlockPos pos) {
+        long chunk = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+        LongSet positions = this.byChunk.get(chunk);
+        if (positions != null && positions.remove(pos.asLong())) {
+            if (positions.isEmpty()) {
+                this.byChunk.remove(chunk);
+            }
+            this.opened.remove(pos.asLong());
+            this.size--;
+            markDirty();
+        }
+    }
+
+    public void markOpened(BlockPos pos) {
+        if (this.opened.add(pos.asLong())) {
+            markDirty();
+        }
+    }
+
+    public void markUnopened(BlockPos pos) {
+        if (this.opened.remove(pos.asLong())) {
+            markDirty();
+        }
+    }
+
+    /**
+     * @return the chunks that have containers, packed with {@link ChunkPos#toLong}
+     */
+    public long[] getChunks() {
+        return this.byChunk.keySet().toLongArray();
+    }
+
+    public boolean contains(BlockPos pos) {
+        LongSet positions = this.byChunk.get(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4));
+        return positions != null && positions.contains(pos.asLong());
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int openedCount() {
+        return this.opened.size();
+    }
+
+    /**
+     * Calls consumer with the packed position of every container.
+     */
+    public void forEach(LongConsumer consumer) {
+        for (LongSet positions : this.byChunk.values()) {
+            positions.forEach(consumer);
+        }
+    }
+
+    /**
+     * Calls consumer with the packed position of every container no player has opened yet.
+     */
+    public void forEachNeverOpened(LongConsumer consumer) {
+        for (LongSet positions : this.byChunk.values()) {
+            for (long pos : positions) {
+                if (!this.opened.contains(pos)) {
+                    consumer.accept(pos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls consumer with the packed position of every container within radius blocks of center, horizontally.  Only
+     * the chunks in range are visited, or every indexed chunk if that's fewer.
+     */
+    public void forEachWithin(BlockPos center, int radius, LongConsumer consumer) {
+        int minChunkX = (center.getX() - radius) >> 4;
+        int maxChunkX = (center.getX() + radius) >> 4;
+        int minChunkZ = (center.getZ() - radius) >> 4;
+        int maxChunkZ = (center.getZ() + radius) >> 4;
+        long radiusSquared = (long) radius * radius;
+        LongConsumer inRange = pos -> {
+            long dx = BlockPos.unpackLongX(pos) - center.getX();
+            long dz = BlockPos.unpackLongZ(pos) - center.getZ();
+            if (dx * dx + dz * dz <= radiusSquared) {
+                consumer.accept(pos);
+            }
+        };
+
+        long chunksInRange = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        if (chunksInRange > this.byChunk.size()) {
+            for (Long2ObjectMap.Entry<LongSet> entry : this.byChunk.long2ObjectEntrySet()) {
+                int chunkX = ChunkPos.getPackedX(entry.getLongKey());
+                int chunkZ = ChunkPos.getPackedZ(entry.getLongKey());
+                if (chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ) {
+                    entry.getValue().forEach(inRange);
+                }
+            }
+        } else {
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; ++chunkX) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; ++chunkZ) {
+                    LongSet positions = this.byChunk.get(ChunkPos.toLong(chunkX, chunkZ));
+                    if (positions != null) {
+                        positions.forEach(inRange);
+                    }
+                }
+            }
+        }
+    }
+}
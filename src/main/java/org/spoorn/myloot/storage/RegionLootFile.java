@@ -0,0 +1,283 @@
+package org.spoorn.myloot.storage;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Instanced loot for all myLoot containers in one region, stored outside the chunk.
+ *
+ * The file is an append-only log of records keyed by container position and player UUID.  The latest record for a key
+ * wins, and an index of record offsets is rebuilt when the file is opened.  Reads go through a memory mapping of the
+ * file, which is re-mapped when it grows.  A mapping can't reach past 2 GB, so records beyond that are read from the
+ * channel instead.  Overwritten records are dropped by compaction once they make up most of the file.
+ *
+ * Record layout: long container pos, long UUID most significant bits, long UUID least significant bits, int length,
+ * then length bytes of uncompressed NBT.  A length of -1 removes the player's instance, and -2 with a zero UUID removes
+ * every instance of the container.
+ */
+@Log4j2
+public class RegionLootFile implements Closeable {
+
+    private static final int MAGIC = 0x4D4C5246; // MLRF
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 28;
+    private static final int REMOVE_INSTANCE = -1;
+    private static final int REMOVE_CONTAINER = -2;
+    private static final long COMPACT_MIN_BYTES = 1 << 20;
+    private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long size;
+    private long liveBytes;
+    // container pos -> player -> offset of the record's NBT bytes
+    private final Long2ObjectMap<Object2LongMap<UUID>> index = new Long2ObjectOpenHashMap<>();
+
+    public RegionLootFile(Path path) throws IOException {
+        this.path = path;
+        open();
+    }
+
+    private void open() throws IOException {
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index.clear();
+        this.liveBytes = 0;
+        this.size = this.channel.size();
+        if (this.size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            this.channel.write(header, 0);
+            this.channel.truncate(HEADER_SIZE);
+            this.size = HEADER_SIZE;
+        }
+        remap();
+
+        if (read(0, 4).getInt(0) != MAGIC) {
+            throw new IOException("Not a myLoot region file: " + this.path);
+        }
+
+        // Rebuild the index.  A truncated record at the end, e.g. from a crash mid-write, is dropped.
+        long position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= this.size) {
+            ByteBuffer header = read(position, RECORD_HEADER_SIZE);
+            long containerPos = header.getLong(0);
+            UUID playerId = new UUID(header.getLong(8), header.getLong(16));
+            int length = header.getInt(24);
+            long dataOffset = position + RECORD_HEADER_SIZE;
+            if (length >= 0 && dataOffset + length > this.size) {
+                break;
+            }
+            apply(containerPos, playerId, length, dataOffset);
+            position = dataOffset + Math.max(length, 0);
+        }
+        if (position < this.size) {
+            log.warn("Dropping {} trailing bytes of incomplete record in {}", this.size - position, this.path);
+            this.channel.truncate(position);
+            this.size = position;
+        }
+    }
+
+    private void remap() throws IOException {
+        this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(this.size, MAX_MAPPED_BYTES));
+    }
+
+    // Appends don't re-map the file, so re-map lazily when reading past the end of the current mapping
+    private void ensureMapped(long end) throws IOException {
+        if (this.mapped == null || (end > this.mapped.capacity() && this.mapped.capacity() < MAX_MAPPED_BYTES)) {
+            remap();
+        }
+    }
+
+    // Bytes past the end of the largest possible mapping are read from the channel
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ensureMapped(offset + length);
+        if (offset + length <= this.mapped.capacity()) {
+            return this.mapped.slice((int) offset, length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of myLoot region file " + this.path + " at " + (offset + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void apply(long containerPos, UUID playerId, int length, long dataOffset) throws IOException {
+        if (length == REMOVE_CONTAINER) {
+            Object2LongMap<UUID> removed = this.index.remove(containerPos);
+            if (removed != null) {
+                for (long offset : removed.values()) {
+                    this.liveBytes -= recordLength(offset);
+                }
+            }
+            return;
+        }
+
+        Object2LongMap<UUID> instances = this.index.get(containerPos);
+        if (instances != null && instances.containsKey(playerId)) {
+            this.liveBytes -= recordLength(instances.getLong(playerId));
+        }
+        if (length == REMOVE_INSTANCE) {
+            if (instances != null) {
+                instances.removeLong(playerId);
+                if (instances.isEmpty()) {
+                    this.index.remove(containerPos);
+                }
+            }
+        } else {
+            if (instances == null) {
+                instances = new Object2LongOpenHashMap<>();
+                this.index.put(containerPos, instances);
+            }
+            instances.put(playerId, dataOffset);
+            this.liveBytes += RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    private int recordLength(long dataOffset) throws IOException {
+        return RECORD_HEADER_SIZE + read(dataOffset - 4, 4).getInt(0);
+    }
+
+    @Nullable
+    public synchronized NbtCompound read(long containerPos, UUID playerId) throws IOException {
+        Object2LongMap<UUID> instances = this.index.get(containerPos);
+        if (instances == null || !instances.containsKey(playerId)) {
+            return null;
+        }
+        return readAt(instances.getLong(playerId));
+    }
+
+    public synchronized Map<UUID, NbtCompound> readAll(long containerPos) throws IOException {
+        Map<UUID, NbtCompound> result = new HashMap<>();
+        Object2LongMap<UUID> instances = this.index.get(containerPos);
+        if (instances != null) {
+            for (Object2LongMap.Entry<UUID> entry : instances.object2LongEntrySet()) {
+                result.put(entry.getKey(), readAt(entry.getLongValue()));
+            }
+        }
+        return result;
+    }
+
+    private NbtCompound readAt(long dataOffset) throws IOException {
+        int length = recordLength(dataOffset) - RECORD_HEADER_SIZE;
+        byte[] bytes = new byte[length];
+        read(dataOffset, length).get(bytes);
+        return NbtIo.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    public synchronized void write(long containerPos, UUID playerId, NbtCompound nbt) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NbtIo.write(nbt, new DataOutputStream(bytes));
+        append(containerPos, playerId, bytes.toByteArray());
+    }
+
+    public synchronized void removeInstance(long containerPos, UUID playerId) throws IOException {
+        Object2LongMap<UUID> instances = this.index.get(containerPos);
+        if (instances != null && instances.containsKey(playerId)) {
+            appendMarker(containerPos, playerId, REMOVE_INSTANCE);
+        }
+    }
+
+    public synchronized void removeContainer(long containerPos) throws IOException {
+        if (this.index.containsKey(containerPos)) {
+            appendMarker(containerPos, new UUID(0, 0), REMOVE_CONTAINER);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.index.isEmpty();
+    }
+
+    private void append(long containerPos, UUID playerId, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+        buffer.putLong(containerPos).putLong(playerId.getMostSignificantBits()).putLong(playerId.getLeastSignificantBits())
+                .putInt(data.length).put(data).flip();
+        writeRecord(buffer, containerPos, playerId, data.length);
+    }
+
+    private void appendMarker(long containerPos, UUID playerId, int marker) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        buffer.putLong(containerPos).putLong(playerId.getMostSignificantBits()).putLong(playerId.getLeastSignificantBits())
+                .putInt(marker).flip();
+        writeRecord(buffer, containerPos, playerId, marker);
+    }
+
+    private void writeRecord(ByteBuffer buffer, long containerPos, UUID playerId, int length) throws IOException {
+        long position = this.size;
+        while (buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        }
+        this.size = position;
+        apply(containerPos, playerId, length, position - Math.max(length, 0));
+    }
+
+    /**
+     * Forces writes to disk, compacting the file first if most of it is overwritten records.
+     */
+    public synchronized void flush() throws IOException {
+        if (this.size > COMPACT_MIN_BYTES && this.liveBytes * 2 < this.size - HEADER_SIZE) {
+            compact();
+        }
+        this.channel.force(false);
+    }
+
+    private void compact() throws IOException {
+        Path tmp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip());
+            for (Long2ObjectMap.Entry<Object2LongMap<UUID>> container : this.index.long2ObjectEntrySet()) {
+                for (long dataOffset : container.getValue().values()) {
+                    long recordOffset = dataOffset - RECORD_HEADER_SIZE;
+                    long recordLength = recordLength(dataOffset);
+                    long copied = 0;
+                    while (copied < recordLength) {
+                        copied += this.channel.transferTo(recordOffset + copied, recordLength - copied, out);
+                    }
+                }
+            }
+            out.force(false);
+        }
+
+        long before = this.size;
+        this.channel.close();
+        this.mapped = null;
+        try {
+            Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The old mapping can keep the file locked on some platforms.  Keep the uncompacted file.
+            log.warn("Could not compact myLoot region file " + this.path, e);
+            Files.deleteIfExists(tmp);
+        }
+        open();
+        log.debug("Compacted {} from {} to {} bytes", this.path, before, this.size);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel.isOpen()) {
+            flush();
+            this.channel.close();
+        }
+        this.mapped = null;
+    }
+}
@@ -0,0 +1,234 @@
+package org.spoorn.myloot.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Rewrites the myLoot NBT of a single container block entity, on the raw NBT of a region file.  Mirrors what
+ * MyLootContainerBlockEntityCommon and MyLootInventory read and write, see there for the formats.
+ */
+final class ContainerMigrator {
+
+    private static final String NBT_KEY = "myLoot";
+    private static final int NBT_VERSION = 3;
+    private static final int SIZE = 27;
+
+    private final boolean convert;
+    private final boolean dedupe;
+    // Players whose instances and opened state are dropped, or null to keep everyone
+    private final Predicate<UUID> inactive;
+
+    ContainerMigrator(boolean convert, boolean dedupe, Predicate<UUID> inactive) {
+        this.convert = convert;
+        this.dedupe = dedupe;
+        this.inactive = inactive;
+    }
+
+    /**
+     * @return true if the block entity NBT was changed
+     */
+    boolean migrate(Nbt.Compound blockEntity, RegionTool.Stats stats) {
+        stats.containers++;
+        if (!blockEntity.contains(NBT_KEY, Nbt.COMPOUND)) {
+            // Never saved by myLoot, e.g. placed by a datapack and not loaded since
+            return false;
+        }
+        Nbt.Compound root = blockEntity.getCompound(NBT_KEY);
+        int version = root.contains("version", Nbt.INT) ? root.getInt("version") : 1;
+        int size = Nbt.sizeOf(root);
+        stats.countVersion(version);
+        stats.bytesBefore += size;
+        stats.recordContainerSize(size, blockEntity);
+        if (root.getBoolean("external")) {
+            // Instances are in the myloot/ region logs, which the server compacts itself
+            stats.external++;
+            stats.bytesAfter += size;
+            return false;
+        }
+
+        // Default loot, unknown while the loot table hasn't been rolled yet
+        Map<Integer, Nbt.Compound> defaults = blockEntity.contains("LootTable", Nbt.STRING) ? null
+                : slots(blockEntity.getList("Items", Nbt.COMPOUND));
+        Set<UUID> opened = new LinkedHashSet<>();
+        Map<UUID, Nbt.Compound> instances = new LinkedHashMap<>();
+        if (version >= NBT_VERSION) {
+            for (Object element : root.getList("opened", Nbt.INT_ARRAY)) {
+                UUID playerId = Nbt.toUuid(element);
+                if (playerId != null) {
+                    opened.add(playerId);
+                }
+            }
+            for (Object element : root.getList("instances", Nbt.COMPOUND)) {
+                Nbt.Compound instance = (Nbt.Compound) element;
+                UUID playerId = Nbt.toUuid(instance.get("id"));
+                if (playerId != null) {
+                    instances.put(playerId, instance);
+                }
+            }
+        } else if (defaults == null) {
+            stats.unconvertible++;
+            stats.bytesAfter += size;
+            return false;
+        } else if (version == 2) {
+            for (Object element : root.getList("opened", Nbt.INT_ARRAY)) {
+                UUID playerId = Nbt.toUuid(element);
+                if (playerId != null) {
+                    opened.add(playerId);
+                }
+            }
+            for (Object element : root.getList("instances", Nbt.COMPOUND)) {
+                Nbt.Compound instance = (Nbt.Compound) element;
+                UUID playerId = Nbt.toUuid(instance.get("id"));
+                if (playerId != null) {
+                    instances.put(playerId, delta(playerId, instance, defaults));
+                }
+            }
+        } else {
+            for (Object element : root.getList("players", Nbt.STRING)) {
+                UUID playerId = parseUuid((String) element);
+                if (playerId != null) {
+                    opened.add(playerId);
+                }
+            }
+            for (Map.Entry<String, Object> entry : root.entrySet()) {
+                UUID playerId = parseUuid(entry.getKey());
+                if (playerId != null && entry.getValue() instanceof Nbt.Compound instance) {
+                    instances.put(playerId, delta(playerId, instance, defaults));
+                }
+            }
+        }
+        stats.instances += instances.size();
+        stats.opened += opened.size();
+
+        boolean changed = version < NBT_VERSION && this.convert;
+        if (this.inactive != null) {
+            int openedBefore = opened.size();
+            int instancesBefore = instances.size();
+            opened.removeIf(this.inactive);
+            instances.keySet().removeIf(this.inactive);
+            stats.droppedOpened += openedBefore - opened.size();
+            stats.droppedInstances += instancesBefore - instances.size();
+            changed |= opened.size() != openedBefore || instances.size() != instancesBefore;
+        }
+        if (this.dedupe) {
+            // An instance without changes is the same as none, the player gets a fresh copy of the default loot
+            int instancesBefore = instances.size();
+            instances.values().removeIf(ContainerMigrator::isPristine);
+            stats.dedupedInstances += instancesBefore - instances.size();
+            changed |= instances.size() != instancesBefore;
+        }
+
+        if (!changed) {
+            stats.bytesAfter += size;
+            return false;
+        }
+
+        // Older formats are always re-written in the current one, like the mod does on its next save
+        if (version < NBT_VERSION) {
+            stats.converted++;
+        }
+        Nbt.Compound migrated = new Nbt.Compound();
+        migrated.put("version", NBT_VERSION);
+        Nbt.TagList instanceList = new Nbt.TagList(Nbt.COMPOUND);
+        instanceList.addAll(instances.values());
+        migrated.put("instances", instanceList);
+        Nbt.TagList openedList = new Nbt.TagList(Nbt.INT_ARRAY);
+        for (UUID playerId : opened) {
+            openedList.add(Nbt.fromUuid(playerId));
+        }
+        migrated.put("opened", openedList);
+        if (version >= NBT_VERSION) {
+            if (this.inactive != null) {
+                root.getList("evicted", Nbt.INT_ARRAY).removeIf(element -> this.inactive.test(Nbt.toUuid(element)));
+            }
+            for (Map.Entry<String, Object> entry : root.entrySet()) {
+                migrated.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        blockEntity.put(NBT_KEY, migrated);
+        stats.bytesAfter += Nbt.sizeOf(migrated);
+        return true;
+    }
+
+    /**
+     * Encodes an instance written in full by version 2 or earlier as a diff against the default loot, the same way
+     * as MyLootInventory.writeDelta.
+     */
+    private static Nbt.Compound delta(UUID playerId, Nbt.Compound instance, Map<Integer, Nbt.Compound> defaults) {
+        Nbt.Compound delta = new Nbt.Compound();
+        delta.put("id", Nbt.fromUuid(playerId));
+        if (instance.getBoolean("Pristine")) {
+            return delta;
+        }
+
+        Map<Integer, Nbt.Compound> items = slots(instance.getList("Items", Nbt.COMPOUND));
+        ByteArrayOutputStream removed = new ByteArrayOutputStream();
+        List<Integer> counts = new ArrayList<>();
+        Nbt.TagList changed = new Nbt.TagList(Nbt.COMPOUND);
+        for (int i = 0; i < SIZE; ++i) {
+            Nbt.Compound stack = items.get(i);
+            Nbt.Compound defaultStack = defaults.get(i);
+            boolean empty = isEmpty(stack);
+            boolean defaultEmpty = isEmpty(defaultStack);
+            if (empty && defaultEmpty || !empty && !defaultEmpty && canCombine(stack, defaultStack)
+                    && stack.getInt("Count") == defaultStack.getInt("Count")) {
+                continue;
+            }
+
+            if (empty) {
+                removed.write(i);
+            } else if (!defaultEmpty && canCombine(stack, defaultStack)) {
+                counts.add(i << 16 | (stack.getInt("Count") & 0xFFFF));
+            } else {
+                changed.add(stack);
+            }
+        }
+
+        if (removed.size() > 0) {
+            delta.put("Removed", removed.toByteArray());
+        }
+        if (!counts.isEmpty()) {
+            delta.put("Counts", counts.stream().mapToInt(Integer::intValue).toArray());
+        }
+        if (!changed.isEmpty()) {
+            delta.put("Items", changed);
+        }
+        return delta;
+    }
+
+    // Own rolls are kept even without changes, see MyLootInventory.needsSaving
+    private static boolean isPristine(Nbt.Compound instance) {
+        return !instance.containsKey("Removed") && !instance.containsKey("Counts") && !instance.containsKey("Items")
+                && !instance.getBoolean("OwnRoll");
+    }
+
+    private static Map<Integer, Nbt.Compound> slots(Nbt.TagList items) {
+        Map<Integer, Nbt.Compound> slots = new HashMap<>();
+        for (Object element : items) {
+            Nbt.Compound stack = (Nbt.Compound) element;
+            int slot = stack.get("Slot") instanceof Number number ? number.intValue() & 0xFF : -1;
+            if (slot >= 0 && slot < SIZE) {
+                slots.put(slot, stack);
+            }
+        }
+        return slots;
+    }
+
+    private static boolean isEmpty(Nbt.Compound stack) {
+        return stack == null || stack.getString("id").equals("minecraft:air") || stack.getInt("Count") <= 0;
+    }
+
+    // Same item and tag, like ItemStack.canCombine
+    private static boolean canCombine(Nbt.Compound a, Nbt.Compound b) {
+        return a.getString("id").equals(b.getString("id")) && Nbt.deepEquals(a.get("tag"), b.get("tag"));
+    }
+
+    private static UUID parseUuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.spoorn.myloot.tool;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A region file (.mca) read fully into memory, see Minecraft's RegionFile for the format.  Chunks are kept as their
+ * stored bytes and only decompressed when read, so unchanged chunks are written back without re-compressing.  Writing
+ * lays out the chunks again without gaps, which also compacts the file.
+ */
+public final class McaRegionFile {
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int CHUNKS = 1024;
+    private static final int MAX_SECTORS = 255;
+    private static final byte GZIP = 1;
+    private static final byte DEFLATE = 2;
+    private static final byte UNCOMPRESSED = 3;
+    private static final byte EXTERNAL_FLAG = (byte) 128;
+
+    private final Path path;
+    private final int regionX;
+    private final int regionZ;
+    // Compression type and stored bytes per chunk index, null if the chunk doesn't exist
+    private final byte[] compression = new byte[CHUNKS];
+    private final byte[][] data = new byte[CHUNKS][];
+    private final int[] timestamps = new int[CHUNKS];
+    // Chunks that were stored in a separate .mcc file because they're too large
+    private final boolean[] external = new boolean[CHUNKS];
+    private boolean changed = false;
+
+    private McaRegionFile(Path path, int regionX, int regionZ) {
+        this.path = path;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+    }
+
+    /**
+     * @return the region file at path, named r.x.z.mca
+     */
+    public static McaRegionFile read(Path path) throws IOException {
+        String[] parts = path.getFileName().toString().split("\\.");
+        if (parts.length != 4 || !parts[0].equals("r") || !parts[3].equals("mca")) {
+            throw new IOException("Not a region file name: " + path.getFileName());
+        }
+        McaRegionFile region;
+        try {
+            region = new McaRegionFile(path, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a region file name: " + path.getFileName(), e);
+        }
+
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < 2 * SECTOR_SIZE) {
+            // Empty or truncated header, Minecraft treats these as empty too
+            return region;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < CHUNKS; ++i) {
+            int location = buffer.getInt(i * 4);
+            region.timestamps[i] = buffer.getInt(SECTOR_SIZE + i * 4);
+            if (location == 0) {
+                continue;
+            }
+            int offset = (location >>> 8) * SECTOR_SIZE;
+            int sectors = location & 0xFF;
+            if (offset + 5 > bytes.length || sectors == 0) {
+                throw new IOException("Chunk " + i + " points outside of " + path);
+            }
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + 4 + length > bytes.length) {
+                throw new IOException("Chunk " + i + " has invalid length " + length + " in " + path);
+            }
+            byte type = bytes[offset + 4];
+            if ((type & EXTERNAL_FLAG) != 0) {
+                region.external[i] = true;
+                region.compression[i] = (byte) (type & ~EXTERNAL_FLAG);
+                region.data[i] = Files.readAllBytes(region.externalPath(i));
+            } else {
+                region.compression[i] = type;
+                region.data[i] = new byte[length - 1];
+                System.arraycopy(bytes, offset + 5, region.data[i], 0, length - 1);
+            }
+        }
+        return region;
+    }
+
+    public Path getPath() {
+        return this.path;
+    }
+
+    public boolean isChanged() {
+        return this.changed;
+    }
+
+    public boolean hasChunk(int index) {
+        return this.data[index] != null;
+    }
+
+    public Nbt.Compound readChunk(int index) throws IOException {
+        InputStream in = new ByteArrayInputStream(this.data[index]);
+        in = switch (this.compression[index]) {
+            case GZIP -> new GZIPInputStream(in);
+            case DEFLATE -> new InflaterInputStream(in);
+            case UNCOMPRESSED -> in;
+            default -> throw new IOException("Unknown compression type " + this.compression[index] + " for chunk " + index + " in " + this.path);
+        };
+        try (DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in))) {
+            return Nbt.read(dataIn);
+        }
+    }
+
+    public void writeChunk(int index, Nbt.Compound nbt) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            Nbt.write(nbt, out);
+        }
+        this.compression[index] = DEFLATE;
+        this.data[index] = bytes.toByteArray();
+        this.timestamps[index] = (int) (System.currentTimeMillis() / 1000);
+        this.changed = true;
+    }
+
+    /**
+     * Writes all chunks back to the region file through a temporary file.
+     *
+     * @return the size of the written region file
+     */
+    public long save() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 * SECTOR_SIZE);
+        ByteBuffer header = ByteBuffer.allocate(2 * SECTOR_SIZE);
+        out.write(header.array());
+        int sector = 2;
+        for (int i = 0; i < CHUNKS; ++i) {
+            if (this.data[i] == null) {
+                continue;
+            }
+            byte[] chunk = this.data[i];
+            boolean external = 5 + chunk.length > MAX_SECTORS * SECTOR_SIZE;
+            if (external) {
+                Files.write(this.externalPath(i), chunk);
+                chunk = new byte[0];
+            } else if (this.external[i]) {
+                Files.deleteIfExists(this.externalPath(i));
+            }
+            this.external[i] = external;
+
+            int length = 5 + chunk.length;
+            int sectors = (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+            ByteBuffer entry = ByteBuffer.allocate(sectors * SECTOR_SIZE);
+            entry.putInt(chunk.length + 1).put(external ? (byte) (this.compression[i] | EXTERNAL_FLAG) : this.compression[i]).put(chunk);
+            out.write(entry.array());
+            header.putInt(i * 4, sector << 8 | sectors);
+            header.putInt(SECTOR_SIZE + i * 4, this.timestamps[i]);
+            sector += sectors;
+        }
+
+        byte[] bytes = out.toByteArray();
+        System.arraycopy(header.array(), 0, bytes, 0, header.capacity());
+        Path tmp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        Files.write(tmp, bytes);
+        Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.changed = false;
+        return bytes.length;
+    }
+
+    private Path externalPath(int index) {
+        return this.path.resolveSibling("c." + (this.regionX * 32 + (index & 31)) + "." + (this.regionZ * 32 + (index >> 5)) + ".mcc");
+    }
+}
@@ -0,0 +1,270 @@
+package org.spoorn.myloot.tool;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Minimal NBT reader and writer for the offline tools, which run without Minecraft on the classpath.
+ *
+ * Tags are plain Java values: Byte, Short, Integer, Long, Float, Double, byte[], String, {@link TagList}, {@link
+ * Compound}, int[] and long[].
+ */
+public final class Nbt {
+
+    public static final byte END = 0;
+    public static final byte BYTE = 1;
+    public static final byte SHORT = 2;
+    public static final byte INT = 3;
+    public static final byte LONG = 4;
+    public static final byte FLOAT = 5;
+    public static final byte DOUBLE = 6;
+    public static final byte BYTE_ARRAY = 7;
+    public static final byte STRING = 8;
+    public static final byte LIST = 9;
+    public static final byte COMPOUND = 10;
+    public static final byte INT_ARRAY = 11;
+    public static final byte LONG_ARRAY = 12;
+
+    private static final int MAX_DEPTH = 512;
+
+    /**
+     * Reads a named root compound, as written by Minecraft's NbtIo.
+     */
+    public static Compound read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        if (type != COMPOUND) {
+            throw new IOException("Root tag must be a compound, got type " + type);
+        }
+        in.readUTF();
+        return (Compound) readPayload(in, COMPOUND, 0);
+    }
+
+    public static void write(Compound root, DataOutput out) throws IOException {
+        out.writeByte(COMPOUND);
+        out.writeUTF("");
+        writePayload(out, root);
+    }
+
+    /**
+     * @return the size of value when written as a tag payload, without its type and name
+     */
+    public static int sizeOf(Object value) {
+        try (DataOutputStream out = new DataOutputStream(OutputStream.nullOutputStream())) {
+            writePayload(out, value);
+            return out.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Object readPayload(DataInput in, byte type, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("NBT nested deeper than " + MAX_DEPTH);
+        }
+        switch (type) {
+            case BYTE: return in.readByte();
+            case SHORT: return in.readShort();
+            case INT: return in.readInt();
+            case LONG: return in.readLong();
+            case FLOAT: return in.readFloat();
+            case DOUBLE: return in.readDouble();
+            case BYTE_ARRAY: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case STRING: return in.readUTF();
+            case LIST: {
+                byte elementType = in.readByte();
+                int size = in.readInt();
+                TagList list = new TagList(elementType);
+                for (int i = 0; i < size; ++i) {
+                    list.add(readPayload(in, elementType, depth + 1));
+                }
+                return list;
+            }
+            case COMPOUND: {
+                Compound compound = new Compound();
+                byte childType;
+                while ((childType = in.readByte()) != END) {
+                    String name = in.readUTF();
+                    compound.put(name, readPayload(in, childType, depth + 1));
+                }
+                return compound;
+            }
+            case INT_ARRAY: {
+                int[] ints = new int[in.readInt()];
+                for (int i = 0; i < ints.length; ++i) {
+                    ints[i] = in.readInt();
+                }
+                return ints;
+            }
+            case LONG_ARRAY: {
+                long[] longs = new long[in.readInt()];
+                for (int i = 0; i < longs.length; ++i) {
+                    longs[i] = in.readLong();
+                }
+                return longs;
+            }
+            default: throw new IOException("Unknown NBT tag type " + type);
+        }
+    }
+
+    private static void writePayload(DataOutput out, Object value) throws IOException {
+        if (value instanceof Byte b) {
+            out.writeByte(b);
+        } else if (value instanceof Short s) {
+            out.writeShort(s);
+        } else if (value instanceof Integer i) {
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeLong(l);
+        } else if (value instanceof Float f) {
+            out.writeFloat(f);
+        } else if (value instanceof Double d) {
+            out.writeDouble(d);
+        } else if (value instanceof byte[] bytes) {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof String s) {
+            out.writeUTF(s);
+        } else if (value instanceof TagList list) {
+            out.writeByte(list.isEmpty() ? END : list.getElementType());
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writePayload(out, element);
+            }
+        } else if (value instanceof Compound compound) {
+            for (Map.Entry<String, Object> entry : compound.entrySet()) {
+                out.writeByte(typeOf(entry.getValue()));
+                out.writeUTF(entry.getKey());
+                writePayload(out, entry.getValue());
+            }
+            out.writeByte(END);
+        } else if (value instanceof int[] ints) {
+            out.writeInt(ints.length);
+            for (int i : ints) {
+                out.writeInt(i);
+            }
+        } else if (value instanceof long[] longs) {
+            out.writeInt(longs.length);
+            for (long l : longs) {
+                out.writeLong(l);
+            }
+        } else {
+            throw new IllegalArgumentException("Not an NBT value: " + value);
+        }
+    }
+
+    public static byte typeOf(Object value) {
+        if (value instanceof Byte) return BYTE;
+        if (value instanceof Short) return SHORT;
+        if (value instanceof Integer) return INT;
+        if (value instanceof Long) return LONG;
+        if (value instanceof Float) return FLOAT;
+        if (value instanceof Double) return DOUBLE;
+        if (value instanceof byte[]) return BYTE_ARRAY;
+        if (value instanceof String) return STRING;
+        if (value instanceof TagList) return LIST;
+        if (value instanceof Compound) return COMPOUND;
+        if (value instanceof int[]) return INT_ARRAY;
+        if (value instanceof long[]) return LONG_ARRAY;
+        throw new IllegalArgumentException("Not an NBT value: " + value);
+    }
+
+    /**
+     * Like equals, but compares arrays by content at any depth.
+     */
+    public static boolean deepEquals(Object a, Object b) {
+        if (a instanceof Compound compoundA && b instanceof Compound compoundB) {
+            if (compoundA.size() != compoundB.size()) {
+                return false;
+            }
+            for (Map.Entry<String, Object> entry : compoundA.entrySet()) {
+                if (!deepEquals(entry.getValue(), compoundB.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof TagList listA && b instanceof TagList listB) {
+            if (listA.size() != listB.size()) {
+                return false;
+            }
+            for (int i = 0; i < listA.size(); ++i) {
+                if (!deepEquals(listA.get(i), listB.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return Arrays.deepEquals(new Object[]{a}, new Object[]{b});
+    }
+
+    /**
+     * Decodes a UUID written by Minecraft's NbtHelper.fromUuid, or null if value isn't one.
+     */
+    public static UUID toUuid(Object value) {
+        if (value instanceof int[] ints && ints.length == 4) {
+            return new UUID((long) ints[0] << 32 | ints[1] & 0xFFFFFFFFL, (long) ints[2] << 32 | ints[3] & 0xFFFFFFFFL);
+        }
+        return null;
+    }
+
+    public static int[] fromUuid(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        return new int[]{(int) (most >> 32), (int) most, (int) (least >> 32), (int) least};
+    }
+
+    public static class Compound extends LinkedHashMap<String, Object> {
+
+        public Compound getCompound(String key) {
+            return get(key) instanceof Compound compound ? compound : new Compound();
+        }
+
+        /**
+         * @return the list at key if it holds elementType, or a new empty list that isn't attached to this compound
+         */
+        public TagList getList(String key, byte elementType) {
+            if (get(key) instanceof TagList list && (list.isEmpty() || list.getElementType() == elementType)) {
+                return list;
+            }
+            return new TagList(elementType);
+        }
+
+        public int getInt(String key) {
+            return get(key) instanceof Number number ? number.intValue() : 0;
+        }
+
+        public String getString(String key) {
+            return get(key) instanceof String s ? s : "";
+        }
+
+        public boolean getBoolean(String key) {
+            return get(key) instanceof Number number && number.byteValue() != 0;
+        }
+
+        public boolean contains(String key, byte type) {
+            Object value = get(key);
+            return value != null && typeOf(value) == type;
+        }
+    }
+
+    public static class TagList extends ArrayList<Object> {
+
+        private final byte elementType;
+
+        public TagList(byte elementType) {
+            this.elementType = elementType;
+        }
+
+        public byte getElementType() {
+            return this.elementType;
+        }
+    }
+}
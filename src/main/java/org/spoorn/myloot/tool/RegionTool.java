@@ -0,0 +1,318 @@
+package org.spoorn.myloot.tool;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Offline maintenance of myLoot containers, reading the world's region files directly while the server is stopped.
+ * Runs from the mod jar without Minecraft:
+ *
+ *   java -jar myloot.jar &lt;world folder&gt; [--convert] [--dedupe] [--drop-inactive &lt;days&gt;] [--dry-run] [--threads &lt;n&gt;]
+ *
+ * Every run reports statistics on the myLoot NBT found.  Region files are processed in parallel, each one is only
+ * rewritten if any of its containers changed.
+ */
+public final class RegionTool {
+
+    // Same as MyLootEntities, which can't be loaded here
+    private static final String CHEST_ID = "myloot:loot_chest";
+    private static final String BARREL_ID = "myloot:loot_barrel";
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    public static void main(String[] args) {
+        Path world = null;
+        boolean convert = false;
+        boolean dedupe = false;
+        int inactiveDays = -1;
+        boolean dryRun = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--convert" -> convert = true;
+                    case "--dedupe" -> dedupe = true;
+                    case "--drop-inactive" -> inactiveDays = Integer.parseInt(args[++i]);
+                    case "--dry-run" -> dryRun = true;
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(args[++i]));
+                    default -> {
+                        if (args[i].startsWith("--") || world != null) {
+                            throw new IllegalArgumentException("Unknown argument " + args[i]);
+                        }
+                        world = Path.of(args[i]);
+                    }
+                }
+            }
+            if (world == null) {
+                throw new IllegalArgumentException("No world folder given");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value for " + args[args.length - 1] : e.getMessage());
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        try {
+            System.exit(run(world, convert, dedupe, inactiveDays, dryRun, threads));
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Failed: " + e);
+            System.exit(2);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java -jar myloot.jar <world folder> [options]");
+        System.err.println("  --convert              Re-write containers saved in older formats in the current one");
+        System.err.println("  --dedupe               Drop instances identical to their container's default loot");
+        System.err.println("  --drop-inactive <days> Drop instances and opened state of players who haven't played for this many days");
+        System.err.println("  --dry-run              Report what would change without writing anything");
+        System.err.println("  --threads <n>          Region files processed in parallel, defaults to the number of cores");
+    }
+
+    private static int run(Path world, boolean convert, boolean dedupe, int inactiveDays, boolean dryRun, int threads) throws IOException, InterruptedException {
+        if (!Files.isDirectory(world.resolve("region"))) {
+            System.err.println(world + " is not a world folder");
+            return 1;
+        }
+
+        Predicate<UUID> inactive = null;
+        if (inactiveDays >= 0) {
+            inactive = inactivePlayers(world, System.currentTimeMillis() - inactiveDays * DAY_MILLIS);
+            if (inactive == null) {
+                return 2;
+            }
+        }
+
+        List<Path> regionFiles;
+        try (Stream<Path> paths = Files.walk(world)) {
+            regionFiles = paths.filter(path -> path.getParent() != null && path.getParent().getFileName().toString().equals("region")
+                    && path.getFileName().toString().matches("r\\.-?\\d+\\.-?\\d+\\.mca")).toList();
+        }
+
+        boolean write = !dryRun && (convert || dedupe || inactive != null);
+        // The server holds session.lock while the world is open, and would overwrite our changes
+        try (FileChannel lockChannel = write ? FileChannel.open(world.resolve("session.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE) : null;
+             FileLock lock = lockChannel != null ? lockChannel.tryLock() : null) {
+            if (write && lock == null) {
+                System.err.println(world + " is in use, stop the server first");
+                return 2;
+            }
+
+            System.out.printf(Locale.ROOT, "Processing %d region files in %s with %d threads%s%n", regionFiles.size(), world, threads,
+                    write ? "" : ", read only");
+            ContainerMigrator migrator = new ContainerMigrator(convert, dedupe, inactive);
+            Stats total = new Stats();
+            AtomicInteger done = new AtomicInteger();
+            long start = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path regionFile : regionFiles) {
+                futures.add(executor.submit(() -> {
+                    Stats stats = processRegion(regionFile, migrator, write);
+                    total.add(stats);
+                    int count = done.incrementAndGet();
+                    if (count % 100 == 0) {
+                        System.out.printf(Locale.ROOT, "%d/%d region files%n", count, regionFiles.size());
+                    }
+                }));
+            }
+            executor.shutdown();
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    // processRegion reports its own failures
+                    total.add(Stats.failed());
+                }
+            }
+
+            total.print(write, (System.nanoTime() - start) / 1_000_000);
+            return total.errors > 0 ? 2 : 0;
+        }
+    }
+
+    /**
+     * Players are considered inactive if their player data wasn't saved since cutoff, which happens at the latest when
+     * they log out.
+     *
+     * @return null if there is no player data to go by
+     */
+    private static Predicate<UUID> inactivePlayers(Path world, long cutoff) throws IOException {
+        Path playerData = world.resolve("playerdata");
+        if (!Files.isDirectory(playerData)) {
+            System.err.println("No playerdata folder in " + world + ", can't tell which players are inactive");
+            return null;
+        }
+
+        Map<UUID, Long> lastPlayed = new HashMap<>();
+        try (Stream<Path> files = Files.list(playerData)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".dat")) {
+                    try {
+                        lastPlayed.put(UUID.fromString(name.substring(0, name.length() - 4)), Files.getLastModifiedTime(file).toMillis());
+                    } catch (IllegalArgumentException ignored) {
+                        // Not a player file
+                    }
+                }
+            }
+        }
+        // Players without player data are dropped too, there is nothing to keep their loot for
+        return playerId -> lastPlayed.getOrDefault(playerId, Long.MIN_VALUE) < cutoff;
+    }
+
+    private static Stats processRegion(Path path, ContainerMigrator migrator, boolean write) {
+        Stats stats = new Stats();
+        stats.regionFiles++;
+        try {
+            stats.regionBytesBefore = Files.size(path);
+            stats.regionBytesAfter = stats.regionBytesBefore;
+            McaRegionFile region = McaRegionFile.read(path);
+            for (int i = 0; i < 1024; ++i) {
+                if (!region.hasChunk(i)) {
+                    continue;
+                }
+                stats.chunks++;
+                Nbt.Compound chunk;
+                try {
+                    chunk = region.readChunk(i);
+                } catch (IOException e) {
+                    System.err.println("Skipping unreadable chunk " + i + " in " + path + ": " + e);
+                    stats.errors++;
+                    continue;
+                }
+
+                // Chunks not loaded since before 1.18 still have the old layout
+                Nbt.TagList blockEntities = chunk.contains("Level", Nbt.COMPOUND)
+                        ? chunk.getCompound("Level").getList("TileEntities", Nbt.COMPOUND)
+                        : chunk.getList("block_entities", Nbt.COMPOUND);
+                boolean changed = false;
+                for (Object element : blockEntities) {
+                    Nbt.Compound blockEntity = (Nbt.Compound) element;
+                    String id = blockEntity.getString("id");
+                    if (id.equals(CHEST_ID) || id.equals(BARREL_ID)) {
+                        changed |= migrator.migrate(blockEntity, stats);
+                    }
+                }
+                if (changed) {
+                    stats.chunksChanged++;
+                    if (write) {
+                        region.writeChunk(i, chunk);
+                    }
+                }
+            }
+            if (region.isChanged()) {
+                stats.regionBytesAfter = region.save();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Skipping " + path + ": " + e);
+            stats.errors++;
+        }
+        return stats;
+    }
+
+    /**
+     * Counts for one region file, added up into the totals.  Sizes are of the myLoot compounds, uncompressed.
+     */
+    static final class Stats {
+
+        long regionFiles;
+        long chunks;
+        long chunksChanged;
+        long containers;
+        final long[] versions = new long[3];
+        long external;
+        long unconvertible;
+        long instances;
+        long opened;
+        long converted;
+        long droppedInstances;
+        long droppedOpened;
+        long dedupedInstances;
+        long bytesBefore;
+        long bytesAfter;
+        long maxBytes;
+        String maxBytesPos = "";
+        long regionBytesBefore;
+        long regionBytesAfter;
+        long errors;
+
+        static Stats failed() {
+            Stats stats = new Stats();
+            stats.errors = 1;
+            return stats;
+        }
+
+        void countVersion(int version) {
+            this.versions[Math.max(1, Math.min(version, this.versions.length)) - 1]++;
+        }
+
+        void recordContainerSize(int size, Nbt.Compound blockEntity) {
+            if (size > this.maxBytes) {
+                this.maxBytes = size;
+                this.maxBytesPos = blockEntity.getInt("x") + " " + blockEntity.getInt("y") + " " + blockEntity.getInt("z");
+            }
+        }
+
+        synchronized void add(Stats other) {
+            this.regionFiles += other.regionFiles;
+            this.chunks += other.chunks;
+            this.chunksChanged += other.chunksChanged;
+            this.containers += other.containers;
+            for (int i = 0; i < this.versions.length; ++i) {
+                this.versions[i] += other.versions[i];
+            }
+            this.external += other.external;
+            this.unconvertible += other.unconvertible;
+            this.instances += other.instances;
+            this.opened += other.opened;
+            this.converted += other.converted;
+            this.droppedInstances += other.droppedInstances;
+            this.droppedOpened += other.droppedOpened;
+            this.dedupedInstances += other.dedupedInstances;
+            this.bytesBefore += other.bytesBefore;
+            this.bytesAfter += other.bytesAfter;
+            if (other.maxBytes > this.maxBytes) {
+                this.maxBytes = other.maxBytes;
+                this.maxBytesPos = other.maxBytesPos;
+            }
+            this.regionBytesBefore += other.regionBytesBefore;
+            this.regionBytesAfter += other.regionBytesAfter;
+            this.errors += other.errors;
+        }
+
+        synchronized void print(boolean written, long millis) {
+            String changes = written ? "" : " (not written)";
+            System.out.printf(Locale.ROOT, "Done in %.1f s: %d region files, %d chunks, %d errors%n", millis / 1000.0, this.regionFiles, this.chunks, this.errors);
+            System.out.printf(Locale.ROOT, "Containers: %d, by format v1 %d / v2 %d / v3 %d, %d with external instances, %d older ones not rolled yet%n",
+                    this.containers, this.versions[0], this.versions[1], this.versions[2], this.external, this.unconvertible);
+            System.out.printf(Locale.ROOT, "Players: %d instances, %d opened%n", this.instances, this.opened);
+            System.out.printf(Locale.ROOT, "Changes%s: %d containers converted, %d inactive instances and %d opened entries dropped, %d instances deduped, %d chunks%n",
+                    changes, this.converted, this.droppedInstances, this.droppedOpened, this.dedupedInstances, this.chunksChanged);
+            System.out.printf(Locale.ROOT, "myLoot NBT: %s -> %s%s, %s mean, largest %s at %s%n", bytes(this.bytesBefore), bytes(this.bytesAfter), changes,
+                    bytes(this.containers > 0 ? this.bytesBefore / this.containers : 0), bytes(this.maxBytes), this.maxBytesPos);
+            System.out.printf(Locale.ROOT, "Region files: %s -> %s%n", bytes(this.regionBytesBefore), bytes(this.regionBytesAfter));
+        }
+
+        private static String bytes(long bytes) {
+            if (bytes < 1024) {
+                return bytes + " B";
+            } else if (bytes < 1024 * 1024) {
+                return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0);
+            }
+            return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024));
+        }
+    }
+}
@@ -1,11 +1,30 @@
 package org.spoorn.myloot.util;
 
+import net.minecraft.block.BarrelBlock;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.ChestBlock;
 import net.minecraft.block.entity.BarrelBlockEntity;
 import net.minecraft.block.entity.ChestBlockEntity;
+import net.minecraft.state.property.Properties;
+import org.jetbrains.annotations.Nullable;
+import org.spoorn.myloot.block.MyLootBlocks;
 
 public final class MyLootUtil {
     
     public static boolean supportedBlockEntity(Object be) {
         return (be instanceof ChestBlockEntity) || (be instanceof BarrelBlockEntity);
     }
+
+    /**
+     * @return The myLoot container block state to replace a vanilla loot container with, or null if not supported
+     */
+    @Nullable
+    public static BlockState getReplacementState(BlockState oldBlockState) {
+        if (oldBlockState.getBlock() instanceof ChestBlock) {
+            return MyLootBlocks.MY_LOOT_CHEST_BLOCK.getDefaultState().with(ChestBlock.FACING, oldBlockState.get(ChestBlock.FACING));
+        } else if (oldBlockState.getBlock() instanceof BarrelBlock) {
+            return MyLootBlocks.MY_LOOT_BARREL_BLOCK.getDefaultState().with(Properties.FACING, oldBlockState.get(Properties.FACING));
+        }
+        return null;
+    }
 }